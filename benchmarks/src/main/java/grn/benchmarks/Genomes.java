@@ -0,0 +1,83 @@
+package grn.benchmarks;
+
+import grn.Protein;
+import grn.WordBitScanner;
+
+import java.util.ArrayList;
+import java.util.Random;
+
+/**
+ * Random genomes with a chosen number of genes, the fixtures of the
+ * benchmarks.
+ *
+ * Random codons, as in Grn.main(), hold a gene roughly every 400 bits,
+ * so the gene count would follow the genome length. Instead every
+ * codon has a mix of 0s and 1s in each 4 bits, which can never form a
+ * promoter, and promoters are planted at evenly spaced codons, one P
+ * gene to every three TF genes.
+ */
+public final class Genomes {
+
+  private Genomes() {
+    ;
+  }
+
+  /**
+   * @param seed seed of the random codons
+   * @param length number of codons
+   * @param genes number of genes, at most length/8
+   * @return a genome holding exactly that many genes
+   */
+  public static int[] random(long seed, int length, int genes) {
+    if (genes < 1 || genes * 8 > length)
+      throw new IllegalArgumentException(genes+" genes do not fit in "+length+" codons");
+    Random r = new Random(seed);
+    int[] codons = new int[length];
+    for (int i = 0; i < length; i++)
+      codons[i] = mixed(r.nextInt());
+
+    /* A gene is an enhancer, an inhibitor, the promoter and 5 codons */
+    int spacing = length / genes;
+    for (int g = 0; g < genes; g++) {
+      boolean p = g % 4 == 3;
+      int promoter = codons[g * spacing + 2];
+      /* The bit before the promoter's last 8 must differ from them */
+      int nibble = (promoter >>> 8) & 0xF;
+      nibble = p ? nibble & ~1 : nibble | 1;
+      if (nibble == 0 || nibble == 0xF)
+        nibble ^= 0x2;
+      codons[g * spacing + 2] = promoter & ~0xFFF | nibble << 8 | (p ? 0xFF : 0x00);
+    }
+
+    WordBitScanner scanner = new WordBitScanner(codons);
+    if (scanner.getTFGenes().length + scanner.getPGenes().length != genes)
+      throw new IllegalStateException("Planted "+genes+" genes but found "
+                                      +(scanner.getTFGenes().length + scanner.getPGenes().length));
+    return codons;
+  }
+
+  /**
+   * @param seed seed of the signatures
+   * @param n number of input proteins
+   * @return input proteins with random signatures
+   */
+  public static ArrayList<Protein> inputs(long seed, int n) {
+    Random r = new Random(seed);
+    ArrayList<Protein> inputs = new ArrayList<Protein>();
+    for (int i = 0; i < n; i++)
+      inputs.add(new Protein(0.1 / (n + 1), r.nextInt()));
+    return inputs;
+  }
+
+  /**
+   * Flip any 4 bits of a word that are all 0s or all 1s.
+   */
+  private static int mixed(int word) {
+    for (int s = 0; s < 32; s += 4) {
+      int nibble = (word >>> s) & 0xF;
+      if (nibble == 0 || nibble == 0xF)
+        word ^= 0x5 << s;
+    }
+    return word;
+  }
+}
@@ -0,0 +1,101 @@
+package grn.benchmarks;
+
+import grn.Grn;
+import grn.helper.GRNLoader;
+import grn.helper.GRNPrinter;
+import grn.helper.TrajectoryReader;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Round trips through GRNPrinter and GRNLoader: populations of
+ * genomes through a genes file, and a sync's trajectory through the
+ * text and binary trajectory files. Files are written to the
+ * temporary directory and replaced on every call.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "--add-modules=jdk.incubator.vector")
+public class IOBenchmark {
+
+  @Param({"1000", "10000"})
+  public int genomeLength;
+
+  @Param({"100"})
+  public int population;
+
+  @Param({"2000"})
+  public int syncSteps;
+
+  private List<int[]> genomes;
+
+  private Grn grn;
+
+  private double[][] results;
+
+  private File genomesFile, textFile, binaryFile;
+
+  @Setup
+  public void setup() throws IOException {
+    genomes = new ArrayList<int[]>();
+    for (int i = 0; i < population; i++)
+      genomes.add(Genomes.random(i, genomeLength, genomeLength / 64));
+    grn = new Grn(genomes.get(0));
+    results = grn.run(syncSteps, false);
+
+    genomesFile = File.createTempFile("grn-bench", ".genes");
+    textFile = File.createTempFile("grn-bench", ".grn");
+    binaryFile = File.createTempFile("grn-bench", ".grnt");
+  }
+
+  @TearDown
+  public void tearDown() {
+    genomesFile.delete();
+    textFile.delete();
+    binaryFile.delete();
+  }
+
+  @Benchmark
+  public List<int[]> genomesRoundTrip() {
+    genomesFile.delete();
+    GRNPrinter.printGenomesToFile(genomesFile.getPath(), genomes);
+    return GRNLoader.readGenomes(genomesFile.getPath());
+  }
+
+  @Benchmark
+  public File trajectoryText() {
+    textFile.delete();
+    GRNPrinter.printGRNToFile(textFile.getPath(), grn, results);
+    return textFile;
+  }
+
+  @Benchmark
+  public double[][] trajectoryBinaryRoundTrip() throws IOException {
+    binaryFile.delete();
+    GRNPrinter.writeGRNToBinaryFile(binaryFile.getPath(), grn, results);
+    TrajectoryReader reader = new TrajectoryReader(binaryFile.getPath());
+    double[][] read = reader.readAll();
+    reader.close();
+    return read;
+  }
+}
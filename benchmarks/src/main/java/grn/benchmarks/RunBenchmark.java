@@ -0,0 +1,92 @@
+package grn.benchmarks;
+
+import grn.Grn;
+import grn.StepKernel;
+import grn.sink.FinalStateSink;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Simulation: initialising a new network until it comes to rest, and
+ * fixed length syncs of a network already at rest, either keeping the
+ * results matrix as run() does or handing each step to a sink, on
+ * each step engine.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "--add-modules=jdk.incubator.vector")
+public class RunBenchmark {
+
+  /** Longest initialisation, as in Grn */
+  private static final int INIT_PERIOD = 10000;
+
+  @Param({"1000", "10000"})
+  public int genomeLength;
+
+  @Param({"16", "64"})
+  public int genes;
+
+  @Param({"0", "4"})
+  public int inputs;
+
+  @Param({"2000"})
+  public int syncSteps;
+
+  @Param({"SCALAR", "VECTOR", "FLOAT"})
+  public StepKernel.Engine engine;
+
+  private int[] codons;
+
+  /** A network at rest */
+  private Grn grn;
+
+  /** A network not yet initialised, replaced before every call */
+  private Grn fresh;
+
+  private final FinalStateSink sink = new FinalStateSink();
+
+  @Setup
+  public void setup() {
+    codons = Genomes.random(42, genomeLength, genes);
+    grn = new Grn(codons, Genomes.inputs(7, inputs));
+    grn.setEngine(engine);
+    grn.run(INIT_PERIOD, true, sink);
+  }
+
+  @Setup(Level.Invocation)
+  public void newNetwork() {
+    fresh = new Grn(codons, Genomes.inputs(7, inputs));
+    fresh.setEngine(engine);
+  }
+
+  @Benchmark
+  public int initialise() {
+    return fresh.run(INIT_PERIOD, true, sink);
+  }
+
+  @Benchmark
+  public double[][] sync() {
+    return grn.run(syncSteps, false);
+  }
+
+  @Benchmark
+  public int syncToSink() {
+    return grn.run(syncSteps, false, sink);
+  }
+}
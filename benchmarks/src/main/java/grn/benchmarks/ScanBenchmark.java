@@ -0,0 +1,66 @@
+package grn.benchmarks;
+
+import grn.BitScanner;
+import grn.Gene;
+import grn.ProteinProducer;
+import grn.Protein;
+import grn.WordBitScanner;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Gene discovery and expression: locating the genes of a genome with
+ * the bit by bit and word at a time scanners, and expressing them
+ * into proteins.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "--add-modules=jdk.incubator.vector")
+public class ScanBenchmark {
+
+  @Param({"1000", "10000", "100000"})
+  public int genomeLength;
+
+  @Param({"16", "64"})
+  public int genes;
+
+  private int[] codons;
+
+  private Gene[] tfGenes;
+
+  @Setup
+  public void setup() {
+    codons = Genomes.random(42, genomeLength, genes);
+    tfGenes = new WordBitScanner(codons).getTFGenes();
+  }
+
+  @Benchmark
+  public Gene[] bitScanner() {
+    return new BitScanner(codons).getTFGenes();
+  }
+
+  @Benchmark
+  public Gene[] wordBitScanner() {
+    return new WordBitScanner(codons).getTFGenes();
+  }
+
+  @Benchmark
+  public Protein[] expressGenes() {
+    return ProteinProducer.expressGenes(tfGenes);
+  }
+}
@@ -0,0 +1,85 @@
+package grn.benchmarks;
+
+import grn.Grn;
+import grn.Protein;
+
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Building a network's lookup table and weights.
+ *
+ * generateTables() is private; injecting a different number of inputs
+ * always rebuilds the tables from scratch, so rebuildTables alternates
+ * between inputs and inputs+1 input proteins. injectInputs keeps the
+ * number of inputs and only changes their concentrations, the common
+ * case between syncs.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "--add-modules=jdk.incubator.vector")
+public class TablesBenchmark {
+
+  @Param({"1000", "10000"})
+  public int genomeLength;
+
+  @Param({"16", "64"})
+  public int genes;
+
+  @Param({"0", "4"})
+  public int inputs;
+
+  private int[] codons;
+
+  private Grn grn;
+
+  /** Input lists alternated between */
+  private ArrayList<Protein> inputsA, inputsB, moreInputs;
+
+  private boolean flip;
+
+  @Setup
+  public void setup() {
+    codons = Genomes.random(42, genomeLength, genes);
+    inputsA = Genomes.inputs(7, inputs);
+    inputsB = Genomes.inputs(7, inputs);
+    for (Protein p : inputsB)
+      p.concentration *= 2;
+    moreInputs = Genomes.inputs(7, inputs + 1);
+    grn = new Grn(codons, Genomes.inputs(7, inputs));
+  }
+
+  @Benchmark
+  public Grn construct() {
+    return new Grn(codons, Genomes.inputs(7, inputs));
+  }
+
+  @Benchmark
+  public Grn rebuildTables() {
+    flip = !flip;
+    grn.injectInputs(flip ? moreInputs : inputsA);
+    return grn;
+  }
+
+  @Benchmark
+  public Grn injectInputs() {
+    flip = !flip;
+    grn.injectInputs(flip ? inputsB : inputsA);
+    return grn;
+  }
+}
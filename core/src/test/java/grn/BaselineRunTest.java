@@ -0,0 +1,117 @@
+package grn;
+
+import java.util.ArrayList;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+/**
+ * The dense and vector kernels follow the original per-protein
+ * regulation loop, re-implemented here from the genes and signatures
+ * of each network.
+ */
+public class BaselineRunTest {
+
+  private static final double[] EXP = new double[33];
+
+  static {
+    for (int i = 0; i < 33; i++)
+      EXP[i] = Math.exp(-i);
+  }
+
+  @Test
+  public void kernelsFollowTheBaseline() {
+    StepKernel.Engine[] engines = { StepKernel.Engine.SCALAR, StepKernel.Engine.VECTOR };
+    Random r = new Random(67);
+    for (int trial = 0; trial < 12; trial++) {
+      int[] codons = Fixtures.genome(r, 64 + r.nextInt(600));
+      ArrayList<Protein> inputs = Fixtures.inputs(r, trial % 3);
+      double[][] expected = baseline(new Grn(codons, Fixtures.copy(inputs)), inputs, 300);
+      for (StepKernel.Engine engine : engines) {
+        Grn grn = new Grn(codons, Fixtures.copy(inputs));
+        grn.setEngine(engine);
+        if (engine == StepKernel.Engine.VECTOR && StepKernel.VECTOR_AVAILABLE)
+          assertSame(StepKernel.Engine.VECTOR, grn.kernel.engine());
+        Fixtures.assertSameTrajectory(expected, grn.run(300, false), 1e-12);
+      }
+    }
+  }
+
+  /**
+   * The original run(timeSteps, false): enhancer and inhibitor
+   * signals summed protein by protein, then clamping and
+   * re-normalisation of each class.
+   */
+  private static double[][] baseline(Grn grn, ArrayList<Protein> inputs, int timeSteps) {
+    int nTf = grn.tfGenes.length, nP = grn.pGenes.length, nIn = inputs.size();
+    int n = nTf + nIn;
+    int[] signatures = new int[n];
+    for (int i = 0; i < nTf; i++)
+      signatures[i] = grn.tfProteins[i].value;
+    double inputConcentration = 0;
+    for (int k = 0; k < nIn; k++) {
+      signatures[nTf + k] = inputs.get(k).value;
+      inputConcentration += inputs.get(k).concentration;
+    }
+
+    Gene[] genes = new Gene[nTf + nP];
+    System.arraycopy(grn.tfGenes, 0, genes, 0, nTf);
+    System.arraycopy(grn.pGenes, 0, genes, nTf, nP);
+    int umax = -1;
+    for (Gene g : genes)
+      for (int j = 0; j < n; j++)
+        umax = Math.max(umax, Math.max(Integer.bitCount(g.enhancer ^ signatures[j]),
+                                       Integer.bitCount(g.inhibitor ^ signatures[j])));
+
+    double[] tf = new double[n], p = new double[nP];
+    for (int i = 0; i < nTf; i++)
+      tf[i] = (1.0 - inputConcentration) / nTf;
+    for (int k = 0; k < nIn; k++)
+      tf[nTf + k] = inputs.get(k).concentration;
+    for (int i = 0; i < nP; i++)
+      p[i] = 1.0 / nP;
+
+    double[][] results = new double[timeSteps + 1][n + nP];
+    for (int t = 0; ; t++) {
+      System.arraycopy(tf, 0, results[t], 0, n);
+      System.arraycopy(p, 0, results[t], n, nP);
+      if (t == timeSteps)
+        return results;
+
+      double[] rates = new double[nTf + nP];
+      for (int g = 0; g < genes.length; g++) {
+        double signal = signal(genes[g].enhancer, signatures, tf, umax)
+          - signal(genes[g].inhibitor, signatures, tf, umax);
+        rates[g] = g < nTf ? signal * tf[g] : signal;
+      }
+      for (int i = 0; i < nTf; i++)
+        tf[i] = Math.max(tf[i] + rates[i], Grn.ZERO);
+      for (int i = 0; i < nP; i++)
+        p[i] = Math.max(p[i] + rates[nTf + i], Grn.ZERO);
+
+      double total = 0;
+      for (int i = 0; i < nTf; i++)
+        total += tf[i];
+      if (total > 0.0)
+        for (int i = 0; i < nTf; i++)
+          tf[i] = tf[i] * (1.0 - inputConcentration) / total;
+      total = 0;
+      for (int i = 0; i < nP; i++)
+        total += p[i];
+      if (total > 0.0)
+        for (int i = 0; i < nP; i++)
+          p[i] /= total;
+    }
+  }
+
+  private static double signal(int site, int[] signatures, double[] tf, int umax) {
+    if (signatures.length == 0)
+      return 0.0;
+    double signal = 0.0;
+    for (int j = 0; j < signatures.length; j++)
+      signal += tf[j] * EXP[umax - Integer.bitCount(site ^ signatures[j])];
+    return signal / signatures.length;
+  }
+}
@@ -0,0 +1,50 @@
+package grn;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Each member of a batch evolves as a copy of the network with the
+ * member's input concentrations injected, whatever happens to the
+ * network afterwards.
+ */
+public class BatchSimulationTest {
+
+  @Test
+  public void membersMatchInjectedCopies() {
+    Random r = new Random(47);
+    for (int trial = 0; trial < 10; trial++) {
+      Grn grn = new Grn(Fixtures.genome(r, 200 + r.nextInt(300)), Fixtures.inputs(r, 1 + trial % 3));
+      int nTf = grn.tfGenes.length;
+      double[][] inputs = new double[4][grn.numberOfInputs];
+      for (double[] member : inputs)
+        for (int k = 0; k < member.length; k++)
+          member[k] = 0.01 + 0.05 * r.nextDouble();
+
+      /* Expected trajectories, from copies with the inputs injected */
+      double[][][] expected = new double[inputs.length][][];
+      for (int b = 0; b < inputs.length; b++) {
+        ArrayList<Protein> injected = new ArrayList<Protein>();
+        for (int k = 0; k < grn.numberOfInputs; k++)
+          injected.add(new Protein(inputs[b][k], grn.tfProteins[nTf + k].value));
+        /* injectInputs() places the last of the list first */
+        Collections.reverse(injected);
+        Grn copy = new Grn(grn, null);
+        copy.injectInputs(injected);
+        expected[b] = copy.run(200, false);
+      }
+
+      BatchSimulation batch = new BatchSimulation(grn, inputs);
+      /* Rewriting the network's weights must not reach the batch */
+      grn.injectInputs(Fixtures.inputs(r, grn.numberOfInputs));
+      grn.setEngine(StepKernel.Engine.values()[trial % StepKernel.Engine.values().length]);
+
+      double[][][] actual = batch.run(200);
+      for (int b = 0; b < inputs.length; b++)
+        Fixtures.assertSameTrajectory(expected[b], actual[b], 1e-12);
+    }
+  }
+}
@@ -0,0 +1,42 @@
+package grn;
+
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * WordBitScanner finds the genes BitScanner does, at the same locations.
+ */
+public class BitScannerTest {
+
+  @Test
+  public void wordScannerMatchesBitScanner() {
+    Random r = new Random(3);
+    for (int trial = 0; trial < 200; trial++) {
+      int[] codons = Fixtures.genome(r, 8 + r.nextInt(600));
+      /* Plant promoters so both gene types turn up */
+      for (int k = 0; k < 4; k++) {
+        int at = r.nextInt(codons.length);
+        codons[at] = r.nextBoolean() ? Gene.TF_PROMOTER : Gene.P_PROMOTER;
+      }
+      BitScanner bits = new BitScanner(codons.clone());
+      BitScanner words = new WordBitScanner(codons.clone());
+      assertSameGenes(bits.getTFGenes(), words.getTFGenes());
+      assertSameGenes(bits.getPGenes(), words.getPGenes());
+    }
+  }
+
+  private static void assertSameGenes(Gene[] expected, Gene[] actual) {
+    assertEquals(expected.length, actual.length, "genes");
+    for (int i = 0; i < expected.length; i++) {
+      assertEquals(expected[i].location, actual[i].location, "location of gene "+i);
+      assertEquals(expected[i].enhancer, actual[i].enhancer, "enhancer of gene "+i);
+      assertEquals(expected[i].inhibitor, actual[i].inhibitor, "inhibitor of gene "+i);
+      assertEquals(expected[i].promoter, actual[i].promoter, "promoter of gene "+i);
+      assertArrayEquals(expected[i].codons, actual[i].codons, "codons of gene "+i);
+    }
+  }
+}
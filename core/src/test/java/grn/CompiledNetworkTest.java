@@ -0,0 +1,73 @@
+package grn;
+
+import grn.sink.MatrixSink;
+
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+/**
+ * Simulations of a compiled network, on every engine, follow the
+ * network they were compiled from.
+ */
+public class CompiledNetworkTest {
+
+  @Test
+  public void simulationsMatchTheNetwork() {
+    Random r = new Random(53);
+    for (StepKernel.Engine engine : StepKernel.Engine.values())
+      for (int trial = 0; trial < 5; trial++) {
+        Grn grn = new Grn(Fixtures.genome(r, 200 + r.nextInt(300)), Fixtures.inputs(r, trial % 3));
+        grn.setEngine(engine);
+        grn.setSparseTolerance(1e-4);
+        CompiledNetwork network = new CompiledNetwork(grn);
+
+        int genes = grn.tfGenes.length + grn.pGenes.length;
+        int n = network.tfLength();
+        for (int g = 0; g < genes; g++)
+          for (int j = 0; j < n; j++)
+            assertEquals(grn.weights[g * n + j], network.weight(g, j), 0.0);
+
+        /* Two simulations at once, sharing the compiled weights */
+        SimulationState first = network.newSimulation();
+        SimulationState second = network.newSimulation();
+        MatrixSink a = new MatrixSink(), b = new MatrixSink();
+        first.run(150, a);
+        second.run(150, b);
+        double[][] expected = grn.run(150, false);
+        Fixtures.assertSameTrajectory(expected, a.getResults(), 0.0);
+        Fixtures.assertSameTrajectory(expected, b.getResults(), 0.0);
+
+        StepKernel kernel = network.newKernel();
+        assertEquals(grn.kernel.engine(), kernel.engine());
+        assertNotSame(kernel, network.newKernel());
+        if (engine == StepKernel.Engine.SPARSE || engine == StepKernel.Engine.FLOAT)
+          assertNull(kernel.weights, "double weights kept by a "+engine+" kernel");
+      }
+  }
+
+  @Test
+  public void initAndInputsMatchTheNetwork() {
+    Random r = new Random(59);
+    for (int trial = 0; trial < 5; trial++) {
+      Grn grn = new Grn(Fixtures.genome(r, 200 + r.nextInt(300)), Fixtures.inputs(r, 2));
+      SimulationState simulation = new CompiledNetwork(grn).newSimulation();
+      MatrixSink expected = new MatrixSink(), actual = new MatrixSink();
+      assertEquals(grn.init(expected), simulation.init(actual));
+      Fixtures.assertSameTrajectory(expected.getResults(), actual.getResults(), 0.0);
+
+      /* Input concentrations changing mid-run */
+      InputTimeline timeline = new InputTimeline(new double[][] {
+          { 0.05, 0.1 }, { 0.05, 0.1 }, { 0.2, 0.01 }, { 0.2, 0.01 }, { 0.0, 0.3 } });
+      expected = new MatrixSink();
+      actual = new MatrixSink();
+      grn.run(100, timeline, expected);
+      simulation.run(100, timeline, actual);
+      Fixtures.assertSameTrajectory(expected.getResults(), actual.getResults(), 0.0);
+    }
+  }
+}
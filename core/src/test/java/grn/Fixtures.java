@@ -0,0 +1,94 @@
+package grn;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Random genomes and inputs, and equality checks on built networks,
+ * shared by the tests.
+ */
+public final class Fixtures {
+
+  private Fixtures() {
+  }
+
+  /**
+   * @return length random codons
+   */
+  public static int[] genome(Random r, int length) {
+    int[] codons = new int[length];
+    for (int i = 0; i < length; i++)
+      codons[i] = r.nextInt();
+    return codons;
+  }
+
+  /**
+   * @return count input proteins with random signatures
+   */
+  public static ArrayList<Protein> inputs(Random r, int count) {
+    ArrayList<Protein> inputs = new ArrayList<Protein>();
+    for (int k = 0; k < count; k++)
+      inputs.add(new Protein(0.02 + 0.03 * k, r.nextInt()));
+    return inputs;
+  }
+
+  /**
+   * @return new proteins with the same signatures and concentrations
+   */
+  public static ArrayList<Protein> copy(ArrayList<Protein> proteins) {
+    ArrayList<Protein> copies = new ArrayList<Protein>();
+    for (Protein p : proteins)
+      copies.add(new Protein(p.concentration, p.value));
+    return copies;
+  }
+
+  /**
+   * Flip bits of a genome.
+   *
+   * @param bits bit indices, most significant bit of codon 0 first
+   * @return the mutated copy
+   */
+  public static int[] flip(int[] codons, int[] bits) {
+    int[] mutant = codons.clone();
+    for (int b : bits)
+      mutant[b / 32] ^= 1 << (31 - b % 32);
+    return mutant;
+  }
+
+  /**
+   * Check two networks have the same genes, proteins, tables and weights.
+   */
+  public static void assertSameNetwork(Grn expected, Grn actual) {
+    assertArrayEquals(expected.getGRNEncoding(), actual.getGRNEncoding(), "gene encoding");
+    assertEquals(expected.umax, actual.umax, "umax");
+    assertEquals(expected.numberOfInputs, actual.numberOfInputs, "inputs");
+    assertEquals(expected.tfProteins.length, actual.tfProteins.length, "TF proteins");
+    for (int i = 0; i < expected.tfProteins.length; i++) {
+      assertEquals(expected.tfProteins[i].value, actual.tfProteins[i].value, "TF signature "+i);
+      assertEquals(expected.tfProteins[i].concentration, actual.tfProteins[i].concentration, 1e-15,
+                   "TF concentration "+i);
+    }
+    for (int i = 0; i < expected.pProteins.length; i++)
+      assertEquals(expected.pProteins[i].value, actual.pProteins[i].value, "P signature "+i);
+    int genes = expected.tfGenes.length + expected.pGenes.length;
+    for (int type = 0; type < 2; type++)
+      for (int g = 0; g < genes; g++)
+        assertArrayEquals(expected.cbits[type][g], actual.cbits[type][g], "match table "+type+", gene "+g);
+    int n = expected.tfProteins.length;
+    assertArrayEquals(Arrays.copyOf(expected.weights, genes * n), Arrays.copyOf(actual.weights, genes * n),
+                      "weights");
+  }
+
+  /**
+   * Check two trajectories agree to within a tolerance.
+   */
+  public static void assertSameTrajectory(double[][] expected, double[][] actual, double tolerance) {
+    assertEquals(expected.length, actual.length, "steps");
+    for (int t = 0; t < expected.length; t++)
+      assertArrayEquals(expected[t], actual[t], tolerance, "step "+t);
+  }
+}
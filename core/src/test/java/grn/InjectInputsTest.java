@@ -0,0 +1,40 @@
+package grn;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Injecting inputs into a built network, whether its input columns are
+ * updated in place or its tables rebuilt, gives the network a fresh
+ * build with those inputs gives, on every engine.
+ */
+public class InjectInputsTest {
+
+  @Test
+  public void injectedMatchesFreshBuild() {
+    Random r = new Random(11);
+    for (int trial = 0; trial < 100; trial++) {
+      int[] codons = Fixtures.genome(r, 64 + r.nextInt(300));
+      int before = r.nextInt(4);
+      int after = trial % 2 == 0 ? before : r.nextInt(4);
+      StepKernel.Engine engine = StepKernel.Engine.values()[trial % StepKernel.Engine.values().length];
+      Grn injected = new Grn(codons, Fixtures.inputs(r, before));
+      injected.setEngine(engine);
+      ArrayList<Protein> inputs = Fixtures.inputs(r, after);
+      injected.injectInputs(Fixtures.copy(inputs));
+
+      /* injectInputs() places the last of the list first */
+      ArrayList<Protein> reversed = Fixtures.copy(inputs);
+      Collections.reverse(reversed);
+      Grn fresh = new Grn(codons, reversed);
+      fresh.setEngine(engine);
+
+      Fixtures.assertSameNetwork(fresh, injected);
+      if (trial % 5 == 0)
+        Fixtures.assertSameTrajectory(fresh.run(200, false), injected.run(200, false), 1e-12);
+    }
+  }
+}
@@ -0,0 +1,74 @@
+package grn;
+
+import java.util.ArrayList;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * A point mutant built incrementally from its parent is the network a
+ * fresh build of the mutated genome gives.
+ */
+public class MutantTest {
+
+  @Test
+  public void mutantMatchesFreshBuild() {
+    Random r = new Random(7);
+    for (int trial = 0; trial < 300; trial++) {
+      int[] codons = Fixtures.genome(r, 64 + r.nextInt(400));
+      ArrayList<Protein> inputs = Fixtures.inputs(r, r.nextInt(3));
+      Grn parent = new Grn(codons, inputs);
+
+      int[] bits = new int[1 + r.nextInt(trial % 3 == 0 ? 40 : 4)];
+      for (int i = 0; i < bits.length; i++)
+        bits[i] = r.nextInt(codons.length * 32);
+      int[] mutated = Fixtures.flip(codons, bits);
+
+      Grn mutant = new Grn(parent, mutated, bits);
+      Grn fresh = new Grn(mutated, Fixtures.copy(inputs));
+      Fixtures.assertSameNetwork(fresh, mutant);
+      if (trial % 10 == 0)
+        Fixtures.assertSameTrajectory(fresh.run(200, false), mutant.run(200, false), 0.0);
+    }
+  }
+
+  @Test
+  public void sharedRowsAreCopiedBeforeInjection() {
+    Random r = new Random(11);
+    int shared = 0;
+    for (int trial = 0; trial < 200; trial++) {
+      int[] codons = Fixtures.genome(r, 64 + r.nextInt(400));
+      ArrayList<Protein> inputs = Fixtures.inputs(r, 1 + r.nextInt(2));
+      Grn parent = new Grn(codons, Fixtures.copy(inputs));
+      int[] bits = { r.nextInt(codons.length * 32) };
+      int[] mutated = Fixtures.flip(codons, bits);
+      Grn mutant = new Grn(parent, mutated, bits);
+
+      boolean sharing = false;
+      for (int g = 0; g < mutant.cbits[0].length; g++)
+        for (int p = 0; p < parent.cbits[0].length; p++)
+          sharing |= mutant.cbits[0][g] == parent.cbits[0][p];
+      if (!sharing)
+        continue;
+      shared++;
+
+      /* New inputs for each leave the other as built */
+      ArrayList<Protein> mutantInputs = Fixtures.inputs(r, inputs.size());
+      mutant.injectInputs(Fixtures.copy(mutantInputs));
+      Fixtures.assertSameNetwork(new Grn(codons, Fixtures.copy(inputs)), parent);
+      Grn fresh = new Grn(mutated, Fixtures.copy(inputs));
+      fresh.injectInputs(Fixtures.copy(mutantInputs));
+      Fixtures.assertSameNetwork(fresh, mutant);
+
+      ArrayList<Protein> parentInputs = Fixtures.inputs(r, inputs.size());
+      parent.injectInputs(Fixtures.copy(parentInputs));
+      Fixtures.assertSameNetwork(fresh, mutant);
+      fresh = new Grn(codons, Fixtures.copy(inputs));
+      fresh.injectInputs(Fixtures.copy(parentInputs));
+      Fixtures.assertSameNetwork(fresh, parent);
+    }
+    assertTrue(shared > 50, "only "+shared+" mutants shared rows");
+  }
+}
@@ -0,0 +1,60 @@
+package grn;
+
+import java.util.ArrayList;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Networks from a NetworkCache, hit or miss, are the networks a fresh
+ * build gives.
+ */
+public class NetworkCacheTest {
+
+  @Test
+  public void hitsMatchFreshBuilds() {
+    Random r = new Random(37);
+    NetworkCache cache = new NetworkCache(8);
+    ArrayList<int[]> genomes = new ArrayList<int[]>();
+    for (int k = 0; k < 12; k++)
+      genomes.add(Fixtures.genome(r, 100 + r.nextInt(300)));
+    ArrayList<Protein> inputs = Fixtures.inputs(r, 2);
+
+    for (int round = 0; round < 3; round++)
+      for (int k = 0; k < genomes.size(); k += 1 + round) {
+        int[] codons = genomes.get(k);
+        Grn fresh = new Grn(codons, Fixtures.copy(inputs));
+        Fixtures.assertSameNetwork(fresh, cache.get(codons, Fixtures.copy(inputs), false));
+
+        fresh.init();
+        Grn initialised = cache.get(codons, Fixtures.copy(inputs), true);
+        Fixtures.assertSameNetwork(fresh, initialised);
+        Fixtures.assertSameTrajectory(fresh.run(100, false), initialised.run(100, false), 0.0);
+      }
+    assertEquals(8, cache.size());
+    assertEquals(cache.getHits() + cache.getMisses(), cache.getGenomeHits() + cache.getGenomeMisses());
+  }
+
+  @Test
+  public void mutantOfHitMatchesFreshBuild() {
+    Random r = new Random(41);
+    NetworkCache cache = new NetworkCache(64);
+    for (int trial = 0; trial < 100; trial++) {
+      /* A chromosome whose genes were cached from another chromosome */
+      int[] codons = Fixtures.genome(r, 200 + r.nextInt(200));
+      int[] shifted = new int[codons.length + 1 + r.nextInt(3)];
+      System.arraycopy(codons, 0, shifted, shifted.length - codons.length, codons.length);
+      ArrayList<Protein> inputs = Fixtures.inputs(r, trial % 2);
+      cache.get(codons, Fixtures.copy(inputs), false);
+      Grn hit = cache.get(shifted, Fixtures.copy(inputs), false);
+
+      int[] bits = new int[1 + r.nextInt(4)];
+      for (int i = 0; i < bits.length; i++)
+        bits[i] = r.nextInt(shifted.length * 32);
+      int[] mutated = Fixtures.flip(shifted, bits);
+      Fixtures.assertSameNetwork(new Grn(mutated, Fixtures.copy(inputs)), new Grn(hit, mutated, bits));
+    }
+  }
+}
@@ -0,0 +1,82 @@
+package grn;
+
+import grn.metrics.Metrics;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * A population evaluated on a pool gives, in input order, the results
+ * of building and running each genome on its own, however the genomes
+ * are spread over the workers and their reused buffers.
+ */
+public class PopulationEvaluatorTest {
+
+  private static final int SYNC = 200;
+
+  @Test
+  public void pooledMatchesSequential() {
+    Random r = new Random(67);
+    List<int[]> population = new ArrayList<int[]>();
+    /* Large genomes first, so small ones reuse wider buffers */
+    for (int k = 0; k < 3; k++)
+      population.add(Fixtures.genome(r, 800 + r.nextInt(400)));
+    for (int k = 0; k < 12; k++)
+      population.add(Fixtures.genome(r, k % 4 == 3 ? 600 : 16 + r.nextInt(48)));
+
+    final List<Integer> sequentialSteps = new ArrayList<Integer>();
+    List<double[]> expected = new ArrayList<double[]>();
+    for (int[] codons : population) {
+      Grn grn = new Grn(codons);
+      grn.init();
+      sequentialSteps.add(grn.getRestStep());
+      double[][] results = grn.run(SYNC, false);
+      expected.add(results[results.length - 1]);
+    }
+    Collections.sort(sequentialSteps);
+    assertTrue(sequentialSteps.get(0) < Grn.INIT_PERIOD, "no genome came to rest");
+
+    for (int threads : new int[] { 1, 4 }) {
+      ForkJoinPool pool = new ForkJoinPool(threads);
+      final List<Integer> steps = Collections.synchronizedList(new ArrayList<Integer>());
+      Grn.setMetrics(new Metrics() {
+          public void networkBuilt(int tfGenes, int pGenes, int inputs, int umax, long nanos) {
+          }
+
+          public void tablesBuilt(int genes, int proteins, int umax, boolean full, long nanos) {
+          }
+
+          public void ran(int genes, int proteins, int count, boolean initialising, boolean atRest, long nanos) {
+            if (initialising)
+              steps.add(count);
+          }
+        });
+      try {
+        /* Twice, so the second pass runs on buffers left by the first */
+        for (int pass = 0; pass < 2; pass++) {
+          steps.clear();
+          List<double[]> finals = new PopulationEvaluator(pool).evaluate(population, SYNC);
+          assertEquals(population.size(), finals.size());
+          for (int k = 0; k < finals.size(); k++)
+            assertArrayEquals(expected.get(k), finals.get(k), 0.0,
+                              "genome "+k+" on "+threads+" threads, pass "+pass);
+          Collections.sort(steps);
+          assertEquals(sequentialSteps, steps, "rest steps on "+threads+" threads, pass "+pass);
+        }
+      }
+      finally {
+        Grn.setMetrics(null);
+        pool.shutdown();
+      }
+    }
+  }
+}
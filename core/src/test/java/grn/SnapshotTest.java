@@ -0,0 +1,102 @@
+package grn;
+
+import grn.helper.SnapshotStore;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * A network restored from a snapshot, directly, through its binary
+ * form or from a reopened store, runs on exactly as the network the
+ * snapshot was taken of.
+ */
+public class SnapshotTest {
+
+  @TempDir
+  Path dir;
+
+  @Test
+  public void restoreIsExact() {
+    Random r = new Random(29);
+    for (int trial = 0; trial < 10; trial++) {
+      int[] codons = Fixtures.genome(r, 300 + r.nextInt(300));
+      ArrayList<Protein> inputs = Fixtures.inputs(r, trial % 3);
+      Grn grn = new Grn(codons, inputs);
+      grn.init();
+      Snapshot snapshot = Snapshot.fromBytes(grn.snapshot().toBytes());
+      assertEquals(grn.getRestStep(), snapshot.restStep);
+
+      /* Restore into a network built without the inputs */
+      Grn restored = new Grn(codons, new ArrayList<Protein>());
+      restored.restore(snapshot);
+      assertEquals(grn.getRestStep(), restored.getRestStep());
+      Fixtures.assertSameTrajectory(grn.run(300, false), restored.run(300, false), 0.0);
+    }
+  }
+
+  @Test
+  public void solverRecordsRestStep() {
+    Random r = new Random(43);
+    SteadyStateSolver solver = new SteadyStateSolver();
+    for (int trial = 0; trial < 10; trial++) {
+      Grn grn = new Grn(Fixtures.genome(r, 300 + r.nextInt(300)), Fixtures.inputs(r, trial % 2));
+      assertEquals(-1, grn.getRestStep());
+      SteadyStateSolver.Result result = solver.solve(grn);
+      int expected = result.converged() ? result.iterations : Grn.INIT_PERIOD;
+      assertEquals(expected, grn.getRestStep());
+      assertEquals(expected, grn.snapshot().restStep);
+    }
+  }
+
+  @Test
+  public void storeSurvivesReopening() throws IOException {
+    Random r = new Random(31);
+    ArrayList<Grn> networks = new ArrayList<Grn>();
+    String file = dir.resolve("snapshots").toString();
+    SnapshotStore store = new SnapshotStore(file);
+    try {
+      for (int k = 0; k < 6; k++) {
+        Grn grn = new Grn(Fixtures.genome(r, 300), Fixtures.inputs(r, k % 2));
+        assertFalse(store.restore(grn));
+        grn.init();
+        store.put(grn);
+        networks.add(grn);
+      }
+      assertEquals(6, store.size());
+    }
+    finally {
+      store.close();
+    }
+
+    store = new SnapshotStore(file);
+    try {
+      assertEquals(6, store.size());
+      for (Grn grn : networks) {
+        Grn copy = new Grn(grn.getGRNEncoding(), new ArrayList<Protein>());
+        Snapshot snapshot = grn.snapshot();
+        copy.injectInputs(snapshot.getInputProteins());
+        assertTrue(store.restore(copy));
+        assertArrayEquals(snapshot.getConcentrations(), copy.snapshot().getConcentrations(), 0.0);
+      }
+      /* Other inputs are a miss */
+      Grn grn = networks.get(0);
+      assertNull(store.get(grn.getGRNEncoding(), new int[] { 1 }, new double[] { 0.1 }));
+      assertEquals(6, store.getHits());
+      assertEquals(1, store.getMisses());
+    }
+    finally {
+      store.close();
+    }
+  }
+}
@@ -0,0 +1,38 @@
+package grn;
+
+import java.util.ArrayList;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * A network built on a workspace that earlier held a larger network
+ * runs as it does on its own.
+ */
+public class WorkspaceTest {
+
+  @Test
+  public void smallAfterLargeMatchesStandalone() {
+    Random r = new Random(61);
+    int rested = 0;
+    for (int trial = 0; trial < 10; trial++) {
+      int[] small = Fixtures.genome(r, 16 + r.nextInt(48));
+      Grn alone = new Grn(small, new ArrayList<Protein>());
+      alone.init();
+
+      Workspace workspace = new Workspace();
+      new Grn(Fixtures.genome(r, 1000), new ArrayList<Protein>(), workspace).init();
+      Grn shared = new Grn(small, new ArrayList<Protein>(), workspace);
+      shared.init();
+
+      assertEquals(alone.getRestStep(), shared.getRestStep(), "rest step of genome "+trial);
+      Fixtures.assertSameTrajectory(alone.run(50, false), shared.run(50, false), 0.0);
+      if (alone.getRestStep() < Grn.INIT_PERIOD)
+        rested++;
+    }
+    assertTrue(rested > 0, "no genome came to rest");
+  }
+}
@@ -0,0 +1,122 @@
+package grn.helper;
+
+import grn.Fixtures;
+import grn.Grn;
+import grn.Protein;
+import grn.sink.MatrixSink;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Trajectories written to the compressed file read back as MatrixSink
+ * records them, exactly or to the chosen precision.
+ */
+public class CompressedTrajectoryTest {
+
+  @TempDir
+  Path dir;
+
+  @Test
+  public void compressedFileRoundTrip() throws IOException {
+    Random r = new Random(17);
+    int[] codons = Fixtures.genome(r, 400);
+    ArrayList<Protein> inputs = Fixtures.inputs(r, 1);
+    MatrixSink matrix = new MatrixSink();
+    new Grn(codons, Fixtures.copy(inputs)).run(3000, false, matrix);
+    double[][] expected = matrix.getResults();
+
+    /* Lossless, and blocks ending mid-run */
+    String file = dir.resolve("run.grnz").toString();
+    CompressedTrajectoryWriter writer = new CompressedTrajectoryWriter(file, 700, 0);
+    new Grn(codons, Fixtures.copy(inputs)).run(3000, false, writer);
+    writer.close();
+    Fixtures.assertSameTrajectory(expected, read(file), 0.0);
+
+    /* Rounded to 2^-34 */
+    file = dir.resolve("rounded.grnz").toString();
+    writer = new CompressedTrajectoryWriter(file, CompressedTrajectoryWriter.BLOCK_ROWS, 34);
+    new Grn(codons, inputs).run(3000, false, writer);
+    writer.close();
+    Fixtures.assertSameTrajectory(expected, read(file), Math.scalb(1.0, -35));
+  }
+
+  @Test
+  public void runsAppendToAnExistingFile() throws IOException {
+    Random r = new Random(19);
+    int[] codons = Fixtures.genome(r, 300);
+    double[][] first = new Grn(codons).run(1500, false);
+    double[][] second = new Grn(codons).run(400, false);
+
+    /* The second writer keeps the file's blocks of 700 rows, rounded to 2^-34 */
+    String file = dir.resolve("runs.grnz").toString();
+    CompressedTrajectoryWriter writer = new CompressedTrajectoryWriter(file, 700, 34);
+    new Grn(codons).run(1500, false, writer);
+    writer.close();
+    writer = new CompressedTrajectoryWriter(file);
+    assertEquals(first.length, writer.getSteps());
+    new Grn(codons).run(400, false, writer);
+    writer.close();
+
+    CompressedTrajectoryReader reader = new CompressedTrajectoryReader(file);
+    try {
+      assertEquals(700, reader.blockRows);
+      assertEquals(34, reader.precisionBits);
+      assertEquals(first.length + second.length, reader.steps);
+      double[] row = new double[reader.width()];
+      for (double[] expected : first) {
+        assertTrue(reader.next(row));
+        assertArrayEquals(expected, row, Math.scalb(1.0, -35));
+      }
+      for (double[] expected : second) {
+        assertTrue(reader.next(row));
+        assertArrayEquals(expected, row, Math.scalb(1.0, -35));
+      }
+      assertFalse(reader.next(row));
+    }
+    finally {
+      reader.close();
+    }
+  }
+
+  @Test
+  public void filesLargerThanAWindowReadBack() throws IOException {
+    /* Random concentrations do not compress, so this is some 20MB */
+    Random r = new Random(23);
+    double[][] expected = new double[120000][20];
+    for (double[] row : expected)
+      for (int i = 0; i < row.length; i++)
+        row[i] = r.nextDouble();
+
+    String file = dir.resolve("large.grnz").toString();
+    CompressedTrajectoryWriter writer = new CompressedTrajectoryWriter(file, 1000, 0);
+    writer.begin(12, 2, 6, expected.length - 1);
+    for (int t = 0; t < expected.length; t++)
+      writer.record(t, expected[t]);
+    writer.end(expected.length - 1);
+    writer.close();
+    assertTrue(writer.getSize() > 1 << 24);
+
+    Fixtures.assertSameTrajectory(expected, read(file), 0.0);
+  }
+
+  private static double[][] read(String file) throws IOException {
+    CompressedTrajectoryReader reader = new CompressedTrajectoryReader(file);
+    try {
+      return reader.readAll();
+    }
+    finally {
+      reader.close();
+    }
+  }
+}
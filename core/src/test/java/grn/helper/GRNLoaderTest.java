@@ -0,0 +1,115 @@
+package grn.helper;
+
+import grn.Fixtures;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.function.Executable;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * The genome file parser reads what GRNPrinter writes, and decimal and
+ * binary text as documented.
+ */
+public class GRNLoaderTest {
+
+  @TempDir
+  Path dir;
+
+  @Test
+  public void printedGenomesReadBack() {
+    Random r = new Random(23);
+    ArrayList<int[]> genomes = new ArrayList<int[]>();
+    for (int k = 0; k < 30; k++)
+      genomes.add(Fixtures.genome(r, 1 + r.nextInt(500)));
+    genomes.add(new int[] { Integer.MIN_VALUE, Integer.MAX_VALUE, 0, -1 });
+
+    String file = dir.resolve("genomes").toString();
+    GRNPrinter.printGenomesToFile(file, genomes);
+    ArrayList<int[]> read = GRNLoader.readGenomes(file);
+    assertEquals(genomes.size(), read.size());
+    for (int k = 0; k < genomes.size(); k++)
+      assertArrayEquals(genomes.get(k), read.get(k), "genome "+k);
+  }
+
+  @Test
+  public void decimalText() throws IOException {
+    ArrayList<int[]> read = GRNLoader.readGenomes(write("decimal", "1 -2\t+3\r\n4\n\n\n-2147483648 2147483647"));
+    assertEquals(2, read.size());
+    assertArrayEquals(new int[] { 1, -2, 3, 4 }, read.get(0));
+    assertArrayEquals(new int[] { Integer.MIN_VALUE, Integer.MAX_VALUE }, read.get(1));
+  }
+
+  @Test
+  public void malformedDecimalText() throws IOException {
+    final String outOfRange = write("range", "2147483648\n");
+    assertThrows(NumberFormatException.class, new Executable() {
+        public void execute() {
+          GRNLoader.readGenomes(outOfRange);
+        }
+      });
+    final String unexpected = write("character", "1 2 x\n");
+    assertThrows(NumberFormatException.class, new Executable() {
+        public void execute() {
+          GRNLoader.readGenomes(unexpected);
+        }
+      });
+  }
+
+  @Test
+  public void binaryText() throws IOException {
+    /* Codons run across lines, and a final partial codon is left aligned */
+    final ArrayList<int[]> read = new ArrayList<int[]>();
+    String file = write("binary", "0000000000000000\n0000000000000011\n101\n");
+    GRNLoader.readBinaryTextGenomes(file, new GRNLoader.GenomeConsumer() {
+        public void accept(int index, int[] codons) {
+          read.add(codons);
+        }
+      });
+    assertEquals(1, read.size());
+    assertArrayEquals(new int[] { 3, 0xA0000000 }, read.get(0));
+  }
+
+  @Test
+  public void binaryTextGenomesEndAtBlankLines() throws IOException {
+    /* Each genome's short last codon is padded, even when it is its only codon */
+    final ArrayList<int[]> read = new ArrayList<int[]>();
+    StringBuilder text = new StringBuilder("1111\n\n");
+    for (int i = 0; i < 39; i++)
+      text.append('0');
+    text.append("1\n");
+    String file = write("separated", text.toString());
+    int genomes = GRNLoader.readBinaryTextGenomes(file, new GRNLoader.GenomeConsumer() {
+        public void accept(int index, int[] codons) {
+          read.add(codons);
+        }
+      });
+    assertEquals(2, genomes);
+    assertArrayEquals(new int[] { 0xF0000000 }, read.get(0));
+    assertArrayEquals(new int[] { 0x00000000, 0x01000000 }, read.get(1));
+  }
+
+  @Test
+  public void unreadableFilesGiveNoNetwork() {
+    String missing = dir.resolve("missing").toString();
+    assertNull(GRNLoader.readFromBinaryTextFile(missing));
+    assertNull(GRNLoader.readFromGenesFile(missing));
+  }
+
+  private String write(String name, String text) throws IOException {
+    Path file = dir.resolve(name);
+    Files.write(file, text.getBytes(StandardCharsets.US_ASCII));
+    return file.toString();
+  }
+}
@@ -0,0 +1,84 @@
+package grn.helper;
+
+import grn.Fixtures;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+/**
+ * Records appended to a population archive read back the same, before
+ * and after it is reopened.
+ */
+public class PopulationArchiveTest {
+
+  @TempDir
+  Path dir;
+
+  @Test
+  public void recordsSurviveReopening() throws IOException {
+    Random r = new Random(19);
+    ArrayList<int[]> codons = new ArrayList<int[]>();
+    ArrayList<double[]> states = new ArrayList<double[]>();
+    double[] fitness = new double[40];
+    for (int k = 0; k < fitness.length; k++) {
+      codons.add(Fixtures.genome(r, r.nextInt(300)));
+      fitness[k] = r.nextGaussian();
+      double[] state = null;
+      if (k % 3 != 0) {
+        state = new double[1 + r.nextInt(20)];
+        for (int i = 0; i < state.length; i++)
+          state[i] = r.nextDouble();
+      }
+      states.add(state);
+    }
+
+    String file = dir.resolve("population").toString();
+    PopulationArchive archive = new PopulationArchive(file);
+    try {
+      assertEquals(0, archive.append(codons.get(0), fitness[0], states.get(0)));
+      assertEquals(1, archive.append(codons.subList(1, 20),
+                                     Arrays.copyOfRange(fitness, 1, 20),
+                                     states.subList(1, 20)));
+      assertRecords(archive, codons, fitness, states, 20);
+    }
+    finally {
+      archive.close();
+    }
+
+    archive = new PopulationArchive(file);
+    try {
+      assertRecords(archive, codons, fitness, states, 20);
+      assertEquals(20, archive.append(codons.subList(20, 40),
+                                      Arrays.copyOfRange(fitness, 20, 40),
+                                      states.subList(20, 40)));
+      assertRecords(archive, codons, fitness, states, 40);
+      assertArrayEquals(fitness, archive.getFitness(), 0.0);
+    }
+    finally {
+      archive.close();
+    }
+  }
+
+  private static void assertRecords(PopulationArchive archive, ArrayList<int[]> codons, double[] fitness,
+                                    ArrayList<double[]> states, int size) {
+    assertEquals(size, archive.size());
+    for (int k = 0; k < size; k++) {
+      assertArrayEquals(codons.get(k), archive.getCodons(k), "codons of record "+k);
+      assertEquals(fitness[k], archive.getFitness(k), 0.0, "fitness of record "+k);
+      if (states.get(k) == null)
+        assertNull(archive.getState(k), "state of record "+k);
+      else
+        assertArrayEquals(states.get(k), archive.getState(k), 0.0, "state of record "+k);
+    }
+  }
+}
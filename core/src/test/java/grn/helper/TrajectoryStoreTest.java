@@ -0,0 +1,206 @@
+package grn.helper;
+
+import grn.Fixtures;
+import grn.Grn;
+import grn.Protein;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Queries answered from the index agree with a scan of the rows, as
+ * the trajectory grows or is replaced.
+ */
+public class TrajectoryStoreTest {
+
+  /** Rows per block, so runs of 1000 steps end in a short block */
+  private static final int BLOCK_ROWS = 64;
+
+  @TempDir
+  Path dir;
+
+  @Test
+  public void queriesMatchAScan() throws IOException {
+    Random r = new Random(29);
+    String file = dir.resolve("run.bin").toString();
+    double[][] rows = append(file, network(r, 0.05), 1000);
+    check(file, rows, r);
+
+    /* Reopened, the index is current */
+    check(file, rows, r);
+  }
+
+  @Test
+  public void indexFollowsAppendedRuns() throws IOException {
+    Random r = new Random(31);
+    String file = dir.resolve("runs.bin").toString();
+    Grn grn = network(r, 0.05);
+    double[][] rows = append(file, grn, 1000);
+    check(file, rows, r);
+
+    /* The index is extended from block 15, which was short */
+    rows = concat(rows, append(file, grn, 700));
+    check(file, rows, r);
+    rows = concat(rows, append(file, grn, 3));
+    check(file, rows, r);
+  }
+
+  @Test
+  public void indexFollowsReplacedFiles() throws IOException {
+    Random r = new Random(37);
+    Path path = dir.resolve("replaced.bin");
+    String file = path.toString();
+    Random genome = new Random(41);
+    double[][] rows = append(file, network(genome, 0.05), 1000);
+    check(file, rows, r);
+    FileTime modified = Files.getLastModifiedTime(path);
+
+    /* The same number of rows under other inputs: the same size, a later time */
+    Files.delete(path);
+    genome = new Random(41);
+    rows = append(file, network(genome, 0.2), 1000);
+    Files.setLastModifiedTime(path, FileTime.fromMillis(modified.toMillis() + 1000));
+    check(file, rows, r);
+
+    /* Fewer rows */
+    Files.delete(path);
+    genome = new Random(41);
+    rows = append(file, network(genome, 0.1), 300);
+    check(file, rows, r);
+  }
+
+  /**
+   * @return a random network with two inputs, the first at concentration input
+   */
+  private static Grn network(Random r, double input) {
+    int[] codons = Fixtures.genome(r, 300);
+    ArrayList<Protein> inputs = new ArrayList<Protein>();
+    inputs.add(new Protein(input, r.nextInt()));
+    inputs.add(new Protein(0.1, r.nextInt()));
+    return new Grn(codons, inputs);
+  }
+
+  /**
+   * Append the next steps of a network to the trajectory.
+   *
+   * @return the rows appended
+   */
+  private static double[][] append(String file, Grn grn, int steps) throws IOException {
+    double[][] rows = grn.run(steps - 1, false);
+    TrajectoryWriter writer = new TrajectoryWriter(file);
+    try {
+      writer.begin(grn.tfGenes.length, grn.numberOfInputs, grn.pGenes.length, steps - 1);
+      for (int t = 0; t < rows.length; t++)
+        writer.record(t, rows[t]);
+      writer.end(steps - 1);
+    }
+    finally {
+      writer.close();
+    }
+    return rows;
+  }
+
+  private static double[][] concat(double[][] a, double[][] b) {
+    double[][] rows = Arrays.copyOf(a, a.length + b.length);
+    System.arraycopy(b, 0, rows, a.length, b.length);
+    return rows;
+  }
+
+  /**
+   * Compare queries, over ranges starting and ending mid-block and
+   * in the short last block, with a scan of the rows.
+   */
+  private static void check(String file, double[][] rows, Random r) throws IOException {
+    TrajectoryStore store = new TrajectoryStore(file, BLOCK_ROWS);
+    try {
+      assertEquals(rows.length, store.getSteps());
+      assertEquals((rows.length + BLOCK_ROWS - 1) / BLOCK_ROWS, store.blocks);
+      int width = store.width();
+      for (long b = 0; b < store.blocks; b++) {
+        int from = (int)(b * store.blockRows), to = (int)Math.min(from + store.blockRows, rows.length);
+        for (int i = 0; i < width; i++) {
+          assertEquals(scanMin(rows, i, from, to), store.blockMin(b, i), 0.0, "block "+b+", protein "+i);
+          assertEquals(scanMax(rows, i, from, to), store.blockMax(b, i), 0.0, "block "+b+", protein "+i);
+          assertEquals(scanMean(rows, i, from, to), store.blockMean(b, i), 1e-12, "block "+b+", protein "+i);
+        }
+      }
+
+      int last = (rows.length - 1) / BLOCK_ROWS * BLOCK_ROWS;
+      for (int q = 0; q < 200; q++) {
+        int protein = r.nextInt(width);
+        int from, to;
+        if (q % 4 == 0) {
+          /* Within the last block */
+          from = last + r.nextInt(rows.length - last);
+          to = from + 1 + r.nextInt(rows.length - from);
+        }
+        else {
+          from = r.nextInt(rows.length);
+          to = from + 1 + r.nextInt(rows.length - from);
+        }
+        String range = "protein "+protein+", steps "+from+" to "+to;
+        assertEquals(scanMin(rows, protein, from, to), store.min(protein, from, to), 0.0, range);
+        assertEquals(scanMax(rows, protein, from, to), store.max(protein, from, to), 0.0, range);
+        assertEquals(scanMean(rows, protein, from, to), store.mean(protein, from, to), 1e-12, range);
+        double[] values = store.range(protein, from, to);
+        for (int t = from; t < to; t++)
+          assertEquals(rows[t][protein], values[t - from], 0.0, range);
+      }
+
+      for (int protein = 0; protein < width; protein++) {
+        double[] thresholds = { scanMean(rows, protein, 0, rows.length), rows[rows.length - 1][protein],
+                                rows[r.nextInt(rows.length)][protein], 0.0, 2.0 };
+        for (double threshold : thresholds) {
+          assertArrayEquals(scan(rows, protein, threshold, true), store.stepsAbove(protein, threshold),
+                            "protein "+protein+" above "+threshold);
+          assertArrayEquals(scan(rows, protein, threshold, false), store.stepsBelow(protein, threshold),
+                            "protein "+protein+" below "+threshold);
+        }
+      }
+    }
+    finally {
+      store.close();
+    }
+  }
+
+  private static double scanMin(double[][] rows, int protein, int from, int to) {
+    double min = Double.POSITIVE_INFINITY;
+    for (int t = from; t < to; t++)
+      min = Math.min(min, rows[t][protein]);
+    return min;
+  }
+
+  private static double scanMax(double[][] rows, int protein, int from, int to) {
+    double max = Double.NEGATIVE_INFINITY;
+    for (int t = from; t < to; t++)
+      max = Math.max(max, rows[t][protein]);
+    return max;
+  }
+
+  private static double scanMean(double[][] rows, int protein, int from, int to) {
+    double sum = 0;
+    for (int t = from; t < to; t++)
+      sum += rows[t][protein];
+    return sum / (to - from);
+  }
+
+  private static long[] scan(double[][] rows, int protein, double threshold, boolean above) {
+    long[] steps = new long[rows.length];
+    int found = 0;
+    for (int t = 0; t < rows.length; t++)
+      if (above ? rows[t][protein] > threshold : rows[t][protein] < threshold)
+        steps[found++] = t;
+    return Arrays.copyOf(steps, found);
+  }
+}
@@ -0,0 +1,48 @@
+package grn.helper;
+
+import grn.Fixtures;
+import grn.Grn;
+import grn.Protein;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Trajectories written to the binary file read back exactly as
+ * Grn.run() returns them.
+ */
+public class TrajectoryWriterTest {
+
+  @TempDir
+  Path dir;
+
+  @Test
+  public void binaryFileRoundTrip() throws IOException {
+    Random r = new Random(13);
+    int[] codons = Fixtures.genome(r, 400);
+    ArrayList<Protein> inputs = Fixtures.inputs(r, 2);
+    double[][] expected = new Grn(codons, Fixtures.copy(inputs)).run(500, false);
+
+    String file = dir.resolve("run.bin").toString();
+    TrajectoryWriter writer = new TrajectoryWriter(file);
+    new Grn(codons, inputs).run(500, false, writer);
+    writer.close();
+
+    TrajectoryReader reader = new TrajectoryReader(file);
+    try {
+      assertEquals(expected.length, reader.steps);
+      assertEquals(expected[0].length, reader.width());
+      Fixtures.assertSameTrajectory(expected, reader.readAll(), 0.0);
+    }
+    finally {
+      reader.close();
+    }
+  }
+}
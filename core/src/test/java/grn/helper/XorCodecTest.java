@@ -0,0 +1,52 @@
+package grn.helper;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * A series XorCodec encodes decodes to exactly the same bits.
+ */
+public class XorCodecTest {
+
+  @Test
+  public void roundTripIsExact() {
+    Random r = new Random(5);
+    XorCodec codec = new XorCodec();
+    for (int trial = 0; trial < 200; trial++) {
+      int count = r.nextInt(2000);
+      int stride = 1 + r.nextInt(4);
+      double[] data = new double[count * stride];
+      double v = r.nextDouble();
+      for (int i = 0; i < count; i++) {
+        /* Runs of repeats, small drifts and jumps, as a trajectory has */
+        switch (r.nextInt(4)) {
+        case 0: break;
+        case 1: v += r.nextGaussian() * 1e-12; break;
+        case 2: v = r.nextDouble(); break;
+        default: v = Double.longBitsToDouble(r.nextLong());
+        }
+        data[i * stride] = v;
+      }
+
+      int length = codec.encode(data, 0, stride, count);
+      assertEquals(length, codec.length());
+      ByteBuffer buffer = ByteBuffer.allocate(length + 3);
+      buffer.put((byte)1).put((byte)2).put((byte)3);
+      codec.copyTo(buffer);
+      assertEquals(length + 3, buffer.position());
+
+      buffer.flip();
+      buffer.position(3);
+      double[] decoded = new double[count * stride];
+      XorCodec.decode(buffer, length, decoded, 0, stride, count);
+      assertEquals(length + 3, buffer.position());
+      for (int i = 0; i < count; i++)
+        assertEquals(Double.doubleToRawLongBits(data[i * stride]),
+                     Double.doubleToRawLongBits(decoded[i * stride]), "value "+i);
+    }
+  }
+}
@@ -0,0 +1,123 @@
+package grn.metrics;
+
+import grn.Fixtures;
+import grn.Grn;
+
+import java.util.ArrayList;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * The counters total what networks report as they are built and run,
+ * including from many threads at once.
+ */
+public class MetricsCounterTest {
+
+  @Test
+  public void countsNetworksAndRuns() {
+    MetricsCounter counter = new MetricsCounter();
+    Grn.setMetrics(counter);
+    try {
+      Random r = new Random(79);
+      long genes = 0, maxGenes = 0, maxUMax = 0, steps = 0, atRest = 0;
+      for (int trial = 0; trial < 6; trial++) {
+        Grn grn = new Grn(Fixtures.genome(r, 100 + r.nextInt(400)), Fixtures.inputs(r, trial % 2));
+        int size = grn.tfGenes.length + grn.pGenes.length;
+        genes += size;
+        maxGenes = Math.max(maxGenes, size);
+        maxUMax = Math.max(maxUMax, grn.umax);
+
+        grn.init();
+        steps += grn.getRestStep();
+        if (grn.getRestStep() < 10000)
+          atRest++;
+        grn.run(250, false);
+        steps += 250;
+      }
+
+      assertEquals(6, counter.getNetworks());
+      assertEquals(genes / 6.0, counter.getMeanGenes(), 1e-12);
+      assertEquals(maxGenes, counter.getMaxGenes());
+      assertEquals(maxUMax, counter.getMaxUMax());
+      assertEquals(6, counter.getTables());
+      assertEquals(6, counter.getFullTables());
+      assertEquals(12, counter.getRuns());
+      assertEquals(steps, counter.getSteps());
+      assertEquals(6, counter.getInits());
+      assertEquals(atRest, counter.getInitsAtRest());
+      assertEquals(6 - atRest, counter.getInitsExhausted());
+      assertTrue(counter.getBuildNanos() > 0);
+      assertTrue(counter.getRunNanos() > 0);
+      assertEquals((double)counter.getRunNanos() / steps, counter.getNanosPerStep(), 1e-9);
+
+      /* New inputs of the same count only rebuild their columns */
+      Grn grn = new Grn(Fixtures.genome(r, 300), Fixtures.inputs(r, 2));
+      grn.injectInputs(Fixtures.inputs(r, 2));
+      assertEquals(8, counter.getTables());
+      assertEquals(7, counter.getFullTables());
+
+      counter.reset();
+      assertEquals(0, counter.getNetworks());
+      assertEquals(0, counter.getMeanGenes(), 0.0);
+      assertEquals(0, counter.getMaxGenes());
+      assertEquals(0, counter.getTables());
+      assertEquals(0, counter.getSteps());
+      assertEquals(0, counter.getNanosPerStep(), 0.0);
+      assertEquals(0, counter.getInitsExhausted());
+    }
+    finally {
+      Grn.setMetrics(null);
+    }
+    assertSame(Metrics.NONE, Grn.getMetrics());
+  }
+
+  @Test
+  public void totalsAreExactUnderContention() throws Exception {
+    final MetricsCounter counter = new MetricsCounter();
+    ExecutorService pool = Executors.newFixedThreadPool(4);
+    try {
+      ArrayList<Future<?>> done = new ArrayList<Future<?>>();
+      for (int task = 0; task < 8; task++) {
+        final int id = task;
+        done.add(pool.submit(new Runnable() {
+          public void run() {
+            for (int i = 0; i < 10000; i++) {
+              counter.networkBuilt(id, 1, 0, 20 + id, 3);
+              counter.tablesBuilt(id + 1, 4, 20, i % 2 == 0, 5);
+              counter.ran(id + 1, 4, 7, i % 4 == 0, i % 8 == 0, 11);
+            }
+          }
+        }));
+      }
+      for (Future<?> f : done)
+        f.get();
+    }
+    finally {
+      pool.shutdown();
+    }
+
+    assertEquals(80000, counter.getNetworks());
+    assertEquals(4.5, counter.getMeanGenes(), 1e-12);
+    assertEquals(8, counter.getMaxGenes());
+    assertEquals(27, counter.getMaxUMax());
+    assertEquals(240000, counter.getBuildNanos());
+    assertEquals(80000, counter.getTables());
+    assertEquals(40000, counter.getFullTables());
+    assertEquals(400000, counter.getTableNanos());
+    assertEquals(80000, counter.getRuns());
+    assertEquals(560000, counter.getSteps());
+    assertEquals(880000, counter.getRunNanos());
+    assertEquals(11.0 / 7, counter.getNanosPerStep(), 1e-12);
+    assertEquals(20000, counter.getInits());
+    assertEquals(10000, counter.getInitsAtRest());
+    assertEquals(10000, counter.getInitsExhausted());
+  }
+}
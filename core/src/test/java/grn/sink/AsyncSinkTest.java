@@ -0,0 +1,138 @@
+package grn.sink;
+
+import grn.Fixtures;
+import grn.Grn;
+
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.function.Executable;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * The writer thread hands the target every call in the order it was
+ * made, and flush and close wait for it.
+ */
+public class AsyncSinkTest {
+
+  @Test
+  public void runsReachTheTargetInOrder() {
+    Random r = new Random(73);
+    for (int chunkRows : new int[] { 1, 7, 64, 1000 }) {
+      MatrixSink target = new MatrixSink();
+      StringBuilder calls = new StringBuilder();
+      AsyncSink sink = new AsyncSink(new Recording(target, calls), chunkRows, 2);
+      for (int run = 0; run < 3; run++) {
+        int[] codons = Fixtures.genome(r, 200 + r.nextInt(300));
+        double[][] expected = new Grn(codons).run(300, false);
+        new Grn(codons).run(300, false, sink);
+
+        /* flush() returns once the target has seen the whole run */
+        sink.flush();
+        Fixtures.assertSameTrajectory(expected, target.getResults(), 0.0);
+        assertEquals(300, target.getLastStep());
+        assertEquals(expectedCalls(300), calls.toString(), "chunks of "+chunkRows);
+        calls.setLength(0);
+      }
+      sink.close();
+    }
+  }
+
+  @Test
+  public void closeWaitsForTheWriter() {
+    final int[] recorded = new int[1];
+    final boolean[] ended = new boolean[1];
+    AsyncSink sink = new AsyncSink(new TrajectorySink() {
+      public void begin(int nTf, int nInputs, int nP, int timeSteps) {
+      }
+      public void record(int t, double[] row) {
+        try {
+          Thread.sleep(1);
+        }
+        catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+        recorded[0]++;
+      }
+      public void end(int lastStep) {
+        ended[0] = true;
+      }
+    }, 4, 1);
+    sink.begin(1, 0, 1, 100);
+    for (int t = 0; t <= 100; t++)
+      sink.record(t, new double[] { t, -t });
+    sink.end(100);
+    sink.close();
+    assertEquals(101, recorded[0]);
+    assertTrue(ended[0]);
+    assertTrue(sink.getWaits() > 0, "a single slow buffer should block the producer");
+  }
+
+  @Test
+  public void targetFailuresReachTheCaller() {
+    final AsyncSink sink = new AsyncSink(new TrajectorySink() {
+      public void begin(int nTf, int nInputs, int nP, int timeSteps) {
+      }
+      public void record(int t, double[] row) {
+        if (t == 10)
+          throw new IllegalArgumentException("bad step");
+      }
+      public void end(int lastStep) {
+      }
+    }, 4);
+    /* Raised by whichever call first sees the failure */
+    IllegalStateException e = assertThrows(IllegalStateException.class, new Executable() {
+      public void execute() {
+        sink.begin(2, 0, 0, 20);
+        for (int t = 0; t <= 20; t++)
+          sink.record(t, new double[2]);
+        sink.end(20);
+        sink.flush();
+      }
+    });
+    assertTrue(e.getCause() instanceof IllegalArgumentException);
+    assertThrows(IllegalStateException.class, new Executable() {
+      public void execute() {
+        sink.close();
+      }
+    });
+    assertFalse(Thread.currentThread().isInterrupted());
+  }
+
+  private static String expectedCalls(int lastStep) {
+    StringBuilder calls = new StringBuilder("begin ");
+    for (int t = 0; t <= lastStep; t++)
+      calls.append(t).append(' ');
+    return calls.append("end ").append(lastStep).toString();
+  }
+
+  /** Notes each call before passing it on */
+  private static class Recording implements TrajectorySink {
+    final TrajectorySink target;
+    final StringBuilder calls;
+
+    Recording(TrajectorySink target, StringBuilder calls) {
+      this.target = target;
+      this.calls = calls;
+    }
+
+    public void begin(int nTf, int nInputs, int nP, int timeSteps) {
+      calls.append("begin ");
+      target.begin(nTf, nInputs, nP, timeSteps);
+    }
+
+    public void record(int t, double[] row) {
+      calls.append(t).append(' ');
+      target.record(t, row);
+    }
+
+    public void end(int lastStep) {
+      calls.append("end ").append(lastStep);
+      target.end(lastStep);
+    }
+  }
+}
@@ -0,0 +1,132 @@
+package grn.sink;
+
+import grn.Fixtures;
+import grn.Grn;
+import grn.Protein;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Each sink keeps the part of a run it is meant to, as found in the
+ * results matrix of the same run.
+ */
+public class SinkTest {
+
+  private static final int STEPS = 200;
+
+  private final Random r = new Random(71);
+  private final int[] codons = Fixtures.genome(r, 400);
+  private final ArrayList<Protein> inputs = Fixtures.inputs(r, 2);
+  private final double[][] expected = new Grn(codons, Fixtures.copy(inputs)).run(STEPS, false);
+
+  private int run(TrajectorySink sink) {
+    return new Grn(codons, Fixtures.copy(inputs)).run(STEPS, false, sink);
+  }
+
+  @Test
+  public void matrixKeepsEveryStep() {
+    MatrixSink sink = new MatrixSink();
+    assertEquals(STEPS, run(sink));
+    assertEquals(STEPS, sink.getLastStep());
+    Fixtures.assertSameTrajectory(expected, sink.getResults(), 0.0);
+
+    FloatMatrixSink floats = new FloatMatrixSink();
+    run(floats);
+    assertEquals(STEPS, floats.getLastStep());
+    for (int t = 0; t <= STEPS; t++)
+      for (int i = 0; i < expected[t].length; i++)
+        assertEquals((float)expected[t][i], floats.getResults()[t][i], 0.0f);
+  }
+
+  @Test
+  public void finalStateKeepsTheLastStep() {
+    FinalStateSink sink = new FinalStateSink();
+    run(sink);
+    assertEquals(STEPS, sink.getStep());
+    assertArrayEquals(expected[STEPS], sink.getState(), 0.0);
+
+    /* A run halted at rest ends early, on its last recorded step */
+    Grn grn = new Grn(codons, Fixtures.copy(inputs));
+    MatrixSink all = new MatrixSink();
+    int last = grn.run(5000, true, all);
+    grn = new Grn(codons, Fixtures.copy(inputs));
+    assertEquals(last, grn.run(5000, true, sink));
+    assertEquals(last, sink.getStep());
+    assertArrayEquals(all.getResults()[last], sink.getState(), 0.0);
+  }
+
+  @Test
+  public void downsamplingKeepsEveryNthStepAndTheLast() {
+    for (int every : new int[] { 1, 7, 10, 300 }) {
+      MatrixSink target = new MatrixSink();
+      run(new DownsamplingSink(every, target));
+      int rows = (STEPS + every - 1) / every + 1;
+      assertEquals(rows - 1, target.getLastStep(), "every "+every);
+      assertEquals(rows, target.getResults().length, "every "+every);
+      for (int k = 0; k < rows - 1; k++)
+        assertArrayEquals(expected[k * every], target.getResults()[k], 0.0, "every "+every+", row "+k);
+      assertArrayEquals(expected[STEPS], target.getResults()[rows - 1], 0.0, "every "+every+", last row");
+    }
+  }
+
+  @Test
+  public void ringBufferKeepsTheLatestSteps() {
+    RingBufferSink sink = new RingBufferSink(16);
+    run(sink);
+    assertEquals(16, sink.size());
+    assertEquals(STEPS - 15, sink.firstStep());
+    Fixtures.assertSameTrajectory(Arrays.copyOfRange(expected, STEPS - 15, STEPS + 1), sink.getSteps(), 0.0);
+
+    /* Fewer steps than the capacity */
+    RingBufferSink large = new RingBufferSink(STEPS * 2);
+    run(large);
+    assertEquals(STEPS + 1, large.size());
+    assertEquals(0, large.firstStep());
+    Fixtures.assertSameTrajectory(expected, large.getSteps(), 0.0);
+  }
+
+  @Test
+  public void projectionKeepsTheChosenProteins() {
+    Grn grn = new Grn(codons, Fixtures.copy(inputs));
+    int nTf = grn.tfGenes.length, nP = grn.pGenes.length, n = grn.tfProteins.length;
+    final int[] shape = new int[4];
+    final MatrixSink matrix = new MatrixSink();
+    TrajectorySink target = new TrajectorySink() {
+      public void begin(int nTf, int nInputs, int nP, int timeSteps) {
+        shape[0] = nTf;
+        shape[1] = nInputs;
+        shape[2] = nP;
+        shape[3] = timeSteps;
+        matrix.begin(nTf, nInputs, nP, timeSteps);
+      }
+      public void record(int t, double[] row) {
+        matrix.record(t, row);
+      }
+      public void end(int lastStep) {
+        matrix.end(lastStep);
+      }
+    };
+
+    grn.run(STEPS, false, ProjectionSink.pOutputs(n, nP, target));
+    assertArrayEquals(new int[] { 0, 0, nP, STEPS }, shape);
+    for (int t = 0; t <= STEPS; t++)
+      assertArrayEquals(Arrays.copyOfRange(expected[t], n, n + nP), matrix.getResults()[t], 0.0);
+
+    /* One TF, the last input and the first P protein */
+    int[] indices = { 0, n - 1, n };
+    run(new ProjectionSink(indices, target));
+    assertArrayEquals(new int[] { 1, 1, 1, STEPS }, shape);
+    for (int t = 0; t <= STEPS; t++)
+      for (int i = 0; i < indices.length; i++)
+        assertEquals(expected[t][indices[i]], matrix.getResults()[t][i], 0.0);
+    assertEquals(STEPS, matrix.getLastStep());
+    assertEquals(nTf + inputs.size(), n);
+  }
+}
@@ -0,0 +1,197 @@
+package grn;
+
+import java.util.Arrays;
+
+/**
+ * Runs one network against a batch of input environments in lockstep.
+ *
+ * Every member of the batch shares the network's input protein
+ * signatures, and so its compiled weights, but has its own input
+ * concentrations and its own protein concentrations. The B
+ * concentration vectors are held as one proteins x B matrix, so a
+ * regulation step is a single matrix-matrix product: each weight is
+ * loaded once per step and applied to the whole batch.
+ *
+ * Each member evolves exactly as a copy of the network would if its
+ * input proteins were given the member's concentrations and the TF
+ * concentrations renormalised, as injectInputs() does.
+ *
+ * Batches advance for a fixed number of steps; there is no at-rest
+ * check, as members would come to rest at different times.
+ */
+public class BatchSimulation {
+
+  /** The network's compiled weights, shared by every member */
+  private final StepKernel kernel;
+
+  /** Number of members */
+  public final int batchSize;
+
+  /** Number of TF proteins including inputs */
+  private final int n;
+
+  /** Number of P proteins */
+  private final int nP;
+
+  /** Number of input proteins */
+  private final int nInputs;
+
+  /** Concentrations, proteins x members, row-major: c[protein * batchSize + member] */
+  private final double[] c;
+
+  /** Sum total of input concentrations per member */
+  private final double[] inputConcentration;
+
+  /** Regulatory signals, genes x members */
+  private final double[] signals;
+
+  /** Per member normalisation totals */
+  private final double[] totals;
+
+  /**
+   * Creates a batch starting from the network's current state.
+   *
+   * @param grn the network, with the input proteins whose signatures the batch shares
+   * @param inputConcentrations members x input proteins concentrations, in
+   * the order the input proteins appear in grn.tfProteins
+   */
+  public BatchSimulation(Grn grn, double[][] inputConcentrations) {
+    batchSize = inputConcentrations.length;
+    n = grn.tfProteins.length;
+    nP = grn.pProteins.length;
+    /* A dense copy of the weights, so the batch is unaffected by later changes to the network */
+    int tfGenes = grn.tfGenes.length;
+    kernel = new StepKernel(Arrays.copyOf(grn.weights, (tfGenes + grn.pGenes.length) * n),
+                            tfGenes, grn.pGenes.length, n);
+    nInputs = grn.numberOfInputs;
+
+    c = new double[(n + nP) * batchSize];
+    inputConcentration = new double[batchSize];
+    signals = new double[(kernel.nTfGenes + nP) * batchSize];
+    totals = new double[batchSize];
+
+    ProteinState start = ProteinState.of(grn.tfProteins, grn.numberOfInputs, grn.pProteins);
+    for (int b = 0; b < batchSize; b++) {
+      if (inputConcentrations[b].length != nInputs)
+        throw new IllegalArgumentException("Member "+b+" has "+inputConcentrations[b].length
+                                           +" input concentrations, expected "+nInputs);
+
+      for (int i = 0; i < n + nP; i++)
+        c[i * batchSize + b] = start.concentrations[i];
+      for (int k = 0; k < nInputs; k++) {
+        c[(n - nInputs + k) * batchSize + b] = inputConcentrations[b][k];
+        inputConcentration[b] += inputConcentrations[b][k];
+      }
+    }
+
+    /* Normalise the rest of the TF concentrations, as injectInputs() does */
+    normalise(0, kernel.nTfGenes, inputConcentration);
+  }
+
+  /**
+   * Iterate every member of the batch.
+   *
+   * @param timeSteps the length of the synchronisation step
+   * @return members x (timeSteps+1) x proteins concentrations, each
+   * member laid out as Grn.results
+   */
+  public double[][][] run(int timeSteps) {
+    double[][][] results = new double[batchSize][timeSteps + 1][n + nP];
+
+    int t;
+    for (t = 0; t < timeSteps; t++) {
+      record(results, t);
+      step();
+    }
+    record(results, t);
+
+    return results;
+  }
+
+  /**
+   * @param member index of a member
+   * @return a copy of the member's current concentrations, laid out as a row of Grn.results
+   */
+  public double[] state(int member) {
+    double[] row = new double[n + nP];
+    for (int i = 0; i < n + nP; i++)
+      row[i] = c[i * batchSize + member];
+    return row;
+  }
+
+  /**
+   * Advance every member one time step.
+   */
+  public void step() {
+    int tfGenes = kernel.nTfGenes;
+    int rows = tfGenes + nP;
+    int B = batchSize;
+    double[] w = kernel.weights;
+
+    /* Regulatory signals S = W x C / n */
+    for (int g = 0; g < rows; g++) {
+      int s = g * B;
+      for (int b = 0; b < B; b++)
+        signals[s + b] = 0.0;
+
+      for (int j = 0; j < n; j++) {
+        double wj = w[g * n + j];
+        int col = j * B;
+        for (int b = 0; b < B; b++)
+          signals[s + b] += wj * c[col + b];
+      }
+
+      for (int b = 0; b < B; b++)
+        signals[s + b] /= (double)n;
+    }
+
+    /* Update protein concentrations c += dc/dt */
+    for (int i = 0; i < tfGenes; i++) {
+      int row = i * B;
+      for (int b = 0; b < B; b++) {
+        c[row + b] += signals[row + b] * c[row + b];
+        if (c[row + b] < Grn.ZERO)
+          c[row + b] = Grn.ZERO;
+      }
+    }
+    for (int i = 0; i < nP; i++) {
+      int row = (n + i) * B;
+      int s = (tfGenes + i) * B;
+      for (int b = 0; b < B; b++) {
+        c[row + b] += signals[s + b];
+        if (c[row + b] < Grn.ZERO)
+          c[row + b] = Grn.ZERO;
+      }
+    }
+
+    /* Re-normalise TF and P concentration levels */
+    normalise(0, tfGenes, inputConcentration);
+    normalise(n, nP, null);
+  }
+
+  /**
+   * Rescale a run of protein rows so that each member's column sums
+   * to 1.0 - its input concentration, or to 1.0 if inputs is null.
+   */
+  private void normalise(int from, int length, double[] inputs) {
+    int B = batchSize;
+    for (int b = 0; b < B; b++)
+      totals[b] = 0.0;
+    for (int i = from; i < from + length; i++)
+      for (int b = 0; b < B; b++)
+        totals[b] += c[i * B + b];
+
+    for (int i = from; i < from + length; i++)
+      for (int b = 0; b < B; b++)
+        if (totals[b] > 0.0) {
+          c[i * B + b] *= inputs == null ? 1.0 : 1.0 - inputs[b];
+          c[i * B + b] /= totals[b];
+        }
+  }
+
+  private void record(double[][][] results, int t) {
+    for (int i = 0; i < n + nP; i++)
+      for (int b = 0; b < batchSize; b++)
+        results[b][t][i] = c[i * batchSize + b];
+  }
+}
@@ -13,7 +13,7 @@ public class BitScanner {
   public static int PROMO_MASK = 0x000000FF;
 
   /** The bit index to start searching for genes from  */
-  private static int STARTING_INDEX = -(Gene.SIZE - 2)*32;
+  protected static int STARTING_INDEX = -(Gene.SIZE - 2)*32;
 
   /** The current search index */
   private int currentIndex;
@@ -104,6 +104,17 @@ public class BitScanner {
    * @return the int value representing the 32 bits from index
    */
   private int getIntFromBitIndex(int index) {
+    return getIntFromBitIndex(chromo, index);
+  }
+
+  /**
+   * Constructs a 32 bit int from 32 bits along a bit sequence.
+   *
+   * @param chromo the genome
+   * @param index a bit index along the bit string genome
+   * @return the int value representing the 32 bits from index
+   */
+  static int getIntFromBitIndex(int[] chromo, int index) {
     /* Calculate which codon and how far along it the index is */
     int codon = index / 32;
     int bitIndex = index % 32;
@@ -115,11 +126,11 @@ public class BitScanner {
     if (bitIndex == 0)
       return chromo[codon];
     /* Otherwise just construct the int from segments of this codon and the next codon */
-    else if (codon < chromoLength - 1) {
+    else if (codon < chromo.length - 1) {
       return (chromo[codon] << bitIndex) | (chromo[codon+1] >>> (32 - bitIndex));
     }
     else {
-      System.out.println("Error getting codon value, index too near end of data: "+index+" -> "+codon+":"+bitIndex+" > "+(chromoLength -1));
+      System.out.println("Error getting codon value, index too near end of data: "+index+" -> "+codon+":"+bitIndex+" > "+(chromo.length -1));
       return -1;
     }
   }
@@ -145,14 +156,26 @@ public class BitScanner {
    * @return The gene about the promoter index
    */
   private Gene getGeneFromPromoterIndex(int index) {
+    return getGeneFromPromoterIndex(chromo, index);
+  }
+
+  /**
+   * Construct a gene from a promoter's bit index along a genome
+   *
+   * @param chromo the genome
+   * @param index beginning of promoter 
+   * @return The gene about the promoter index
+   */
+  static Gene getGeneFromPromoterIndex(int[] chromo, int index) {
     Gene g = new Gene();
-    g.enhancer  = getIntFromBitIndex(index-64);
-    g.inhibitor = getIntFromBitIndex(index-32);
-    g.promoter  = getIntFromBitIndex(index);
+    g.enhancer  = getIntFromBitIndex(chromo, index-64);
+    g.inhibitor = getIntFromBitIndex(chromo, index-32);
+    g.promoter  = getIntFromBitIndex(chromo, index);
     g.codons    = new int[5];
+    g.location  = index;
 
     for (int i = 0; i < 5; i++)
-      g.codons[i] = getIntFromBitIndex(index + 32 + (i * 32));
+      g.codons[i] = getIntFromBitIndex(chromo, index + 32 + (i * 32));
 
     return g;
   }
@@ -164,7 +187,7 @@ public class BitScanner {
    * @param prevIndex the index of the previous promoter site 
    * @return the index of the next promoter site
    */
-  private int nextPromoter(int prevIndex) {
+  protected int nextPromoter(int prevIndex) {
     if (prevIndex < 0)
       prevIndex = STARTING_INDEX;
 
@@ -0,0 +1,166 @@
+package grn;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * The immutable structure of a network: its genes, protein
+ * signatures, umax, lookup table and compiled weights, along with the
+ * state simulations start from.
+ *
+ * Unlike a Grn, a compiled network holds no simulation state of its
+ * own and never changes, so one instance can be shared by any number
+ * of threads. The weights are compiled once, into the form the engine
+ * runs on, and shared by every simulation. Simulations are run on
+ * SimulationState objects, each of which costs one concentration
+ * vector plus the scratch storage of its step kernel.
+ *
+ * Input signatures are part of the structure; input concentrations
+ * belong to each simulation.
+ */
+public final class CompiledNetwork {
+
+  /** Number of (non-input) TF proteins, i.e. TF genes */
+  public final int nTf;
+
+  /** Number of input TF proteins */
+  public final int nInputs;
+
+  /** Number of P proteins, i.e. P genes */
+  public final int nP;
+
+  /** The greatest match observed between a protein and a regulatory site */
+  public final int umax;
+
+  /** The step implementation simulations run on */
+  public final StepKernel.Engine engine;
+
+  /** Weights the SPARSE engine drops */
+  public final double tolerance;
+
+  /** Gene encoding as Grn.getGRNEncoding() */
+  private final int[] encoding;
+
+  /** Protein signatures: TF, input, P, shared by the states of every simulation */
+  final int[] signatures;
+
+  /** umax - complementaryBitCount: enhancer/inhibitor x genes x TF proteins */
+  private final int[][][] cbits;
+
+  /** Kernel over the compiled weights, which every simulation's kernel shares */
+  private final StepKernel kernel;
+
+  /** Concentrations simulations start from: TF, input, P */
+  private final double[] initial;
+
+  /** Sum total of the initial input concentrations */
+  private final double initialInputConcentration;
+
+  /**
+   * Compiles a snapshot of a network. The network's current
+   * concentrations become the starting state of new simulations, so a
+   * network compiled after init() starts its simulations at rest.
+   *
+   * @param grn the network to compile
+   */
+  public CompiledNetwork(Grn grn) {
+    grn.syncState();
+    ProteinState state = grn.state;
+
+    nTf = state.nTf;
+    nInputs = state.nInputs;
+    nP = state.nP;
+    umax = grn.umax;
+    engine = grn.getEngine();
+    tolerance = grn.getSparseTolerance();
+    encoding = grn.getGRNEncoding();
+    signatures = state.signatures.clone();
+    initial = state.concentrations.clone();
+    initialInputConcentration = state.inputConcentration;
+
+    int genes = nTf + nP;
+    int n = state.tfLength();
+    cbits = new int[2][genes][];
+    for (int type = 0; type < 2; type++)
+      for (int g = 0; g < genes; g++)
+        cbits[type][g] = Arrays.copyOf(grn.cbits[type][g], n);
+    kernel = StepKernel.create(engine, Arrays.copyOf(grn.weights, genes * n), nTf, nP, n, tolerance);
+  }
+
+  /**
+   * Build and compile the network of a chromosome.
+   *
+   * @param codons 32 bit integers making up the binary string
+   * @param inputProteins list of input TF proteins
+   * @param initialise whether simulations should start from the state after init()
+   * @return the compiled network
+   */
+  public static CompiledNetwork compile(int[] codons, ArrayList<Protein> inputProteins, boolean initialise) {
+    Grn grn = new Grn(codons, inputProteins);
+    if (initialise)
+      grn.init();
+    return new CompiledNetwork(grn);
+  }
+
+  /**
+   * @return a new simulation at this network's starting state
+   */
+  public SimulationState newSimulation() {
+    return new SimulationState(this, initial.clone(), initialInputConcentration);
+  }
+
+  /**
+   * @return a new step kernel over the shared weights
+   */
+  StepKernel newKernel() {
+    return kernel.share();
+  }
+
+  /**
+   * @return number of TF proteins including inputs
+   */
+  public int tfLength() {
+    return nTf + nInputs;
+  }
+
+  /**
+   * @param protein index of a protein, laid out as a row of Grn.results
+   * @return the protein's signature
+   */
+  public int signature(int protein) {
+    return signatures[protein];
+  }
+
+  /**
+   * @param site 0 for a gene's enhancer, 1 for its inhibitor
+   * @param gene index of a gene, TF genes first
+   * @param protein index of a TF protein, inputs last
+   * @return umax - complementaryBitCount for the site and protein
+   */
+  public int match(int site, int gene, int protein) {
+    return cbits[site][gene][protein];
+  }
+
+  /**
+   * @param gene index of a gene, TF genes first
+   * @param protein index of a TF protein, inputs last
+   * @return the weight of the protein's regulation of the gene
+   */
+  public double weight(int gene, int protein) {
+    return ProteinProducer.exp[cbits[0][gene][protein]] - ProteinProducer.exp[cbits[1][gene][protein]];
+  }
+
+  /**
+   * @return a copy of the starting concentrations, laid out as a row of Grn.results
+   */
+  public double[] getInitialState() {
+    return initial.clone();
+  }
+
+  /**
+   * @return array of codon values encoding all genes, as Grn.getGRNEncoding()
+   */
+  public int[] getGRNEncoding() {
+    return encoding.clone();
+  }
+}
@@ -0,0 +1,158 @@
+package grn;
+
+/**
+ * A StepKernel that steps in single precision.
+ *
+ * The weights are rounded to float once, halving the bandwidth of the
+ * matrix-vector product, and each step regulates, updates and
+ * renormalises a float copy of the concentrations. The stepped TF and
+ * P concentrations are written back rounded to float; input
+ * concentrations are left as they are. Sinks still receive double
+ * rows, which FloatMatrixSink keeps in single precision.
+ *
+ * Trajectories typically drift from the double kernel's by around
+ * 1e-5 of a concentration over thousands of steps, but a network with
+ * more than one attractor may be carried into a different one; see the
+ * README for a comparison on reference genomes.
+ *
+ * Only the float weights are kept, not the double ones; if those are
+ * rewritten in place weightsChanged() must be called. Kernels from
+ * share() share the float weights.
+ */
+public class FloatStepKernel extends StepKernel {
+
+  /** Grn.ZERO in single precision */
+  protected static final float ZERO = (float)Grn.ZERO;
+
+  /** Row-major weights rounded to single precision */
+  protected float[] floatWeights;
+
+  /** Regulatory signal per gene for the current step */
+  protected final float[] floatSignals;
+
+  /** Single precision concentrations, sized on first step */
+  private float[] x = new float[0];
+
+  /**
+   * Creates a kernel over an already compiled weight matrix.
+   *
+   * @param weights row-major genes x TF proteins weights
+   * @param nTfGenes number of TF genes
+   * @param nPGenes number of P genes
+   * @param nTfProteins number of TF proteins, including inputs
+   */
+  public FloatStepKernel(double[] weights, int nTfGenes, int nPGenes, int nTfProteins) {
+    super((double[])null, nTfGenes, nPGenes, nTfProteins);
+    floatSignals = new float[nTfGenes + nPGenes];
+    weightsChanged(weights);
+  }
+
+  /**
+   * Creates a kernel sharing another's float weights.
+   *
+   * @param other the kernel to share
+   */
+  protected FloatStepKernel(FloatStepKernel other) {
+    super((double[])null, other.nTfGenes, other.nPGenes, other.nTfProteins);
+    floatWeights = other.floatWeights;
+    floatSignals = new float[nTfGenes + nPGenes];
+  }
+
+  @Override
+  public Engine engine() {
+    return Engine.FLOAT;
+  }
+
+  @Override
+  public StepKernel share() {
+    return new FloatStepKernel(this);
+  }
+
+  /**
+   * Round the weights to float, into a new array as the old may be shared.
+   */
+  @Override
+  public void weightsChanged(double[] weights) {
+    float[] rounded = new float[(nTfGenes + nPGenes) * nTfProteins];
+    for (int k = 0; k < rounded.length; k++)
+      rounded[k] = (float)weights[k];
+    floatWeights = rounded;
+  }
+
+  @Override
+  public void step(double[] c, double inputConcentration) {
+    int n = nTfProteins;
+    int nP = c.length - n;
+    if (x.length != c.length)
+      x = new float[c.length];
+    float[] x = this.x;
+    for (int i = 0; i < c.length; i++)
+      x[i] = (float)c[i];
+
+    regulate(x, nTfGenes + nP);
+
+    /* Update protein concentrations c += dc/dt */
+    for (int i = 0; i < nTfGenes; i++) {
+      x[i] += floatSignals[i] * x[i];
+      if (x[i] < ZERO)
+        x[i] = ZERO;
+    }
+    for (int i = 0; i < nP; i++) {
+      x[n + i] += floatSignals[nTfGenes + i];
+      if (x[n + i] < ZERO)
+        x[n + i] = ZERO;
+    }
+
+    normalise(x, 0, nTfGenes, (float)(1.0 - inputConcentration));
+    normalise(x, n, nP, 1.0f);
+
+    for (int i = 0; i < nTfGenes; i++)
+      c[i] = x[i];
+    for (int i = n; i < c.length; i++)
+      c[i] = x[i];
+  }
+
+  /**
+   * Compute the regulatory signal of the first rows genes, as
+   * StepKernel.regulate() does, in single precision.
+   *
+   * @param x concentration vector
+   * @param rows number of gene rows to evaluate
+   */
+  protected void regulate(float[] x, int rows) {
+    int n = nTfProteins;
+    if (n == 0) {
+      for (int g = 0; g < rows; g++)
+        floatSignals[g] = 0.0f;
+      return;
+    }
+
+    for (int g = 0; g < rows; g++) {
+      int row = g * n;
+      float signal = 0.0f;
+      for (int j = 0; j < n; j++)
+        signal += floatWeights[row + j] * x[j];
+      floatSignals[g] = signal / (float)n;
+    }
+  }
+
+  /**
+   * Rescale a run of concentrations so they sum to total.
+   *
+   * @param x concentration vector
+   * @param from first index of the run
+   * @param length length of the run
+   * @param total the required sum total
+   */
+  protected void normalise(float[] x, int from, int length, float total) {
+    float sum = 0;
+    for (int i = from; i < from + length; i++)
+      sum += x[i];
+
+    if (sum > 0.0f)
+      for (int i = from; i < from + length; i++) {
+        x[i] *= total;
+        x[i] /= sum;
+      }
+  }
+}
@@ -29,6 +29,9 @@ public class Gene {
   /** An index field */
   public int index;
 
+  /** The bit index of the gene's promoter along the genome it was found in */
+  public int location;
+
   /**
    * Default constructor - not implemented
    */
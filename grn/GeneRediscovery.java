@@ -0,0 +1,171 @@
+package grn;
+
+import java.util.Arrays;
+
+/**
+ * Finds the genes of a child genome from its parent's genes and the
+ * bits that were mutated, without rescanning the whole genome.
+ *
+ * The genes a scan finds form a chain: each promoter is the first one
+ * at least a gene's length past the previous. While the child's chain
+ * agrees with the parent's, the next parent promoter is also the next
+ * child promoter unless a mutation touched the promoter bits of some
+ * position between them. Only then is the child scanned, from the
+ * last agreed promoter, until the chain lands on a parent promoter
+ * again. Genes whose bits were not mutated are the parent's own Gene
+ * objects; the rest are extracted from the child genome.
+ *
+ * Genome length must be unchanged.
+ */
+class GeneRediscovery {
+
+  /** TF genes of the child, in genome order */
+  Gene[] tfGenes;
+
+  /** P genes of the child, in genome order */
+  Gene[] pGenes;
+
+  /** Parent table row of each child TF gene, -1 if not reused */
+  int[] tfParentRows;
+
+  /** Parent table row of each child P gene, -1 if not reused */
+  int[] pParentRows;
+
+  /** The child genome */
+  private final int[] chromo;
+
+  /** Mutated bit indices, ascending */
+  private final int[] mutations;
+
+  /** Growing results */
+  private int nTf, nP;
+
+  /**
+   * @param parent the parent network
+   * @param codons the child genome, the same length as the parent's
+   * @param mutatedBits bit indices at which the child differs from the parent
+   */
+  GeneRediscovery(Grn parent, int[] codons, int[] mutatedBits) {
+    chromo = codons;
+    mutations = mutatedBits.clone();
+    Arrays.sort(mutations);
+
+    /* Parent genes merged into genome order, with their table rows */
+    int parentTf = parent.tfGenes.length, parentP = parent.pGenes.length;
+    Gene[] genes = new Gene[parentTf + parentP];
+    int[] rows = new int[genes.length];
+    for (int i = 0, t = 0, p = 0; i < genes.length; i++) {
+      if (p >= parentP || (t < parentTf && parent.tfGenes[t].location < parent.pGenes[p].location)) {
+        genes[i] = parent.tfGenes[t];
+        rows[i] = t++;
+      }
+      else {
+        genes[i] = parent.pGenes[p];
+        rows[i] = parentTf + p++;
+      }
+    }
+
+    tfGenes = new Gene[parentTf + 1];
+    pGenes = new Gene[parentP + 1];
+    tfParentRows = new int[tfGenes.length];
+    pParentRows = new int[pGenes.length];
+
+    int limit = chromo.length*32 - 192;
+    int prev = BitScanner.STARTING_INDEX;
+    int next = 0;
+    boolean inSync = true;
+    while (true) {
+      int from = prev + Gene.SIZE*32;
+
+      if (inSync) {
+        /* Unchanged promoter bits up to the next parent promoter mean it is also the child's */
+        int end = next < genes.length ? genes[next].location : limit;
+        if (!mutated(from + 24, end + 31)) {
+          if (next == genes.length)
+            break;
+          prev = genes[next].location;
+          accept(prev, genes[next], rows[next], rows[next] < parentTf);
+          next++;
+          continue;
+        }
+        inSync = false;
+      }
+
+      /* Scan the child until its chain meets the parent's again */
+      int q = WordBitScanner.nextPromoter(chromo, from);
+      if (q < 0)
+        break;
+      while (next < genes.length && genes[next].location < q)
+        next++;
+      if (next < genes.length && genes[next].location == q) {
+        accept(q, genes[next], rows[next], rows[next] < parentTf);
+        next++;
+        inSync = true;
+      }
+      else {
+        accept(q, null, -1, false);
+      }
+      prev = q;
+    }
+
+    tfGenes = Arrays.copyOf(tfGenes, nTf);
+    pGenes = Arrays.copyOf(pGenes, nP);
+    tfParentRows = Arrays.copyOf(tfParentRows, nTf);
+    pParentRows = Arrays.copyOf(pParentRows, nP);
+  }
+
+  /**
+   * Add the gene at a promoter to the child, reusing the parent's gene
+   * if none of its bits were mutated.
+   *
+   * @param location the promoter's bit index
+   * @param parentGene the parent's gene at this promoter, or null
+   * @param parentRow the parent gene's table row
+   * @param parentTf whether the parent gene is a TF gene
+   */
+  private void accept(int location, Gene parentGene, int parentRow, boolean parentTf) {
+    Gene g;
+    boolean tf;
+    if (parentGene != null && !mutated(location - 64, location + 32*(Gene.SIZE - 2) - 1)) {
+      g = parentGene;
+      tf = parentTf;
+    }
+    else {
+      g = BitScanner.getGeneFromPromoterIndex(chromo, location);
+      tf = (g.promoter & BitScanner.PROMO_MASK) == Gene.TF_PROMOTER;
+      parentRow = -1;
+    }
+
+    if (tf) {
+      tfGenes = grow(tfGenes, nTf);
+      tfParentRows = grow(tfParentRows, nTf);
+      tfGenes[nTf] = g;
+      tfParentRows[nTf++] = parentRow;
+    }
+    else {
+      pGenes = grow(pGenes, nP);
+      pParentRows = grow(pParentRows, nP);
+      pGenes[nP] = g;
+      pParentRows[nP++] = parentRow;
+    }
+  }
+
+  /**
+   * @return whether any bit in [from, to] was mutated
+   */
+  private boolean mutated(int from, int to) {
+    int i = Arrays.binarySearch(mutations, from);
+    if (i >= 0)
+      return true;
+    i = -i - 1;
+    return i < mutations.length && mutations[i] <= to;
+  }
+
+  private static Gene[] grow(Gene[] a, int n) {
+    return n < a.length ? a : Arrays.copyOf(a, a.length * 2 + 1);
+  }
+
+  private static int[] grow(int[] a, int n) {
+    return n < a.length ? a : Arrays.copyOf(a, a.length * 2 + 1);
+  }
+}
@@ -2,10 +2,14 @@ package grn;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.Random;
 
 import grn.helper.ArrayUtils;
 import grn.helper.GRNPrinter;
+import grn.metrics.Metrics;
+import grn.sink.MatrixSink;
+import grn.sink.TrajectorySink;
 
 /**
  *
@@ -16,13 +20,13 @@ public class Grn {
   public static final double ZERO = 1e-10;
 
   /** The length of the initial stablisation syncronisation step */
-  private static final int INIT_PERIOD = 10000;
+  static final int INIT_PERIOD = 10000;
 
   /** Widow size when checking for stability/steady state */
-  private static final int REST_STEP = 100;
+  static final int REST_STEP = 100;
 
   /** Threshold of stability */
-  private static final double REST_EPSILON = ZERO;
+  static final double REST_EPSILON = ZERO;
 
   /** 
    * The GRN time series data for the latest syncronisation step.
@@ -58,6 +62,55 @@ public class Grn {
   /** The greatest match observed between a protein and a regulatory site */
   public int umax;
 
+  /**
+   * This network's lookup table of umax - complementaryBitCount:
+   * enhancer/inhibitor x all genes x TF proteins. Owned by this
+   * instance so separate networks can be built and run concurrently,
+   * though rows may be shared with a point mutant or its parent; they
+   * are only read, and copied before this network writes to them.
+   */
+  public int[][][] cbits;
+
+  /** Whether rows of cbits may be shared with another network */
+  private volatile boolean tableShared;
+
+  /**
+   * The lookup table compiled into row-major weights: all genes x TF
+   * proteins. Rewritten in place when inputs are injected.
+   */
+  public double[] weights;
+
+  /** The compiled regulation step, rebuilt along with the lookup table */
+  public StepKernel kernel;
+
+  /** The greatest match of a non-input TF protein, -1 until needed */
+  private int genomeUMax = -1;
+
+  /**
+   * The time step at which the last init() or SteadyStateSolver came to
+   * rest, INIT_PERIOD if it did not, or -1 if the network has not been
+   * initialised
+   */
+  private int restStep = -1;
+
+  /** The step implementation requested for this network */
+  private StepKernel.Engine engine = StepKernel.Engine.SCALAR;
+
+  /** Weights the SPARSE engine drops */
+  private double tolerance = SparseStepKernel.DEFAULT_TOLERANCE;
+
+  /** Where construction and runs are reported, shared by every network */
+  private static volatile Metrics metrics = Metrics.NONE;
+
+  /** Storage borrowed from a batch evaluator, null if this network owns its tables */
+  private Workspace workspace;
+
+  /**
+   * Structure-of-arrays protein state the simulation runs against.
+   * The Protein objects above are refreshed from it after each run.
+   */
+  public ProteinState state;
+
   /**
    * Creates a new GRN from a binary string in the form of an integer
    * array. No inputs proteins are provided.
@@ -87,28 +140,29 @@ public class Grn {
    * @param inputProteins list of input TF proteins
    */
   public Grn(int[] codons, ArrayList<Protein> inputProteins) {
+    this(codons, inputProteins, null);
+  }
+
+  /**
+   * Creates a new GRN whose lookup table and weights are borrowed from
+   * a workspace rather than allocated.
+   *
+   * @param codons 32 bit integers making up the binary string
+   * @param inputProteins list of input TF proteins
+   * @param workspace storage to build the tables in, or null
+   */
+  Grn(int[] codons, ArrayList<Protein> inputProteins, Workspace workspace) {
+    long start = startTimer();
+    this.workspace = workspace;
+
     /* Locate Genes */
-    BitScanner hunter = new BitScanner(codons);
+    BitScanner hunter = new WordBitScanner(codons);
     tfGenes = hunter.getTFGenes();
     pGenes = hunter.getPGenes();
     hunter = null;
 
-    /* Express Proteins */
-    tfProteins = ProteinProducer.expressGenes(tfGenes);
-    pProteins = ProteinProducer.expressGenes(pGenes);
-
-    /* Initialise concentrations */
-    calculateInputConcentration(inputProteins);
-    setInitialProteinConcentrations();
-
-    /* Add inputs */
-    numberOfInputs = inputProteins.size();
-    tfProteins = Arrays.copyOf(tfProteins, tfProteins.length + numberOfInputs);
-    for (int p = 0; p < numberOfInputs; p++)
-      tfProteins[tfGenes.length + p] = inputProteins.get(p);
-
-    /* Generate the precalculated tables */
-    generateTables();
+    assemble(inputProteins);
+    built(start);
   }
 
   /**
@@ -130,6 +184,8 @@ public class Grn {
    * @param inputProteins list of input TF proteins
    */
   public Grn(String codonString, ArrayList<Protein> inputProteins) {
+    long start = startTimer();
+
     /* Decode the string into ints for locating the genes */
     String[] codonStrings = codonString.split(" ");
     int[] codons = new int[codonStrings.length];
@@ -137,11 +193,82 @@ public class Grn {
       codons[i] = Integer.parseInt(codonStrings[i]);
 
     /* Locate Genes */
-    BitScanner hunter = new BitScanner(codons);
+    BitScanner hunter = new WordBitScanner(codons);
     tfGenes = hunter.getTFGenes();
     pGenes = hunter.getPGenes();
     hunter = null;
 
+    assemble(inputProteins);
+    built(start);
+  }
+
+  /**
+   * Creates a new GRN from genes already located in a genome.
+   *
+   * @param tfGenes the TF genes, in genome order
+   * @param pGenes the P genes, in genome order
+   * @param inputProteins list of input TF proteins
+   */
+  Grn(Gene[] tfGenes, Gene[] pGenes, ArrayList<Protein> inputProteins) {
+    long start = startTimer();
+    this.tfGenes = tfGenes;
+    this.pGenes = pGenes;
+    assemble(inputProteins);
+    built(start);
+  }
+
+  /**
+   * Creates a copy of a network that shares only its genes. Proteins,
+   * the lookup table and weights are copied, so the two can be run and
+   * have inputs injected independently. Simulation results are not
+   * copied.
+   *
+   * @param other the network to copy
+   * @param inputProteins input proteins to use instead of copies of the
+   * other's, with the same signatures and concentrations in the order
+   * they appear in other.tfProteins, or null to copy them
+   */
+  Grn(Grn other, ArrayList<Protein> inputProteins) {
+    engine = other.engine;
+    tolerance = other.tolerance;
+    chromosome = other.chromosome;
+    tfGenes = other.tfGenes;
+    pGenes = other.pGenes;
+
+    tfProteins = new Protein[other.tfProteins.length];
+    for (int i = 0; i < tfProteins.length; i++)
+      tfProteins[i] = new Protein(other.tfProteins[i].concentration, other.tfProteins[i].value);
+    if (inputProteins != null)
+      for (int p = 0; p < other.numberOfInputs; p++)
+        tfProteins[tfGenes.length + p] = inputProteins.get(p);
+    pProteins = new Protein[other.pProteins.length];
+    for (int i = 0; i < pProteins.length; i++)
+      pProteins[i] = new Protein(other.pProteins[i].concentration, other.pProteins[i].value);
+
+    inputConcentration = other.inputConcentration;
+    numberOfInputs = other.numberOfInputs;
+    umax = other.umax;
+    genomeUMax = other.genomeUMax;
+    restStep = other.restStep;
+
+    int genes = tfGenes.length + pGenes.length;
+    int n = tfProteins.length;
+    cbits = new int[2][genes][];
+    for (int type = 0; type < 2; type++)
+      for (int g = 0; g < genes; g++)
+        cbits[type][g] = Arrays.copyOf(other.cbits[type][g], n);
+    weights = Arrays.copyOf(other.weights, genes * n);
+    kernel = StepKernel.create(engine, weights, tfGenes.length, pGenes.length, n, tolerance);
+    syncState();
+  }
+
+  /**
+   * Express the located genes, assign initial concentrations, add the
+   * inputs and generate the precalculated tables.
+   *
+   * @param inputProteins list of input TF proteins
+   */
+  private void assemble(ArrayList<Protein> inputProteins) {
     /* Express Proteins */
     tfProteins = ProteinProducer.expressGenes(tfGenes);
     pProteins = ProteinProducer.expressGenes(pGenes);
@@ -160,6 +287,297 @@ public class Grn {
     generateTables();
   }
 
+  /**
+   * Creates the GRN of a point mutant of an existing network. Only the
+   * parts of the genome around the mutated bits are rescanned; genes
+   * whose bits are untouched keep their proteins' signatures and their
+   * rows of the parent's lookup table and weights, so only rows and
+   * columns of new genes are recalculated. When the TF proteins are
+   * all the parent's, the untouched rows of the lookup table are the
+   * parent's own arrays rather than copies. Weights are recompiled in
+   * full only if umax changes.
+   *
+   * The parent's input proteins are copied, and initial concentrations
+   * are assigned as by the other constructors. The result is the same
+   * network as new Grn(codons, inputs) would build. Gene objects may be
+   * shared with the parent, so Gene.index is not maintained for them.
+   *
+   * @param parent the network the genome was mutated from
+   * @param codons the mutated genome, the same length as the parent's
+   * @param mutatedBits bit indices at which codons differs from the parent's genome
+   */
+  public Grn(Grn parent, int[] codons, int[] mutatedBits) {
+    long start = startTimer();
+    engine = parent.engine;
+    tolerance = parent.tolerance;
+
+    /* Locate Genes, reusing the parent's where possible */
+    GeneRediscovery found = new GeneRediscovery(parent, codons, mutatedBits);
+    tfGenes = found.tfGenes;
+    pGenes = found.pGenes;
+
+    /* Express Proteins, only for new genes */
+    tfProteins = expressGenes(parent, tfGenes, found.tfParentRows);
+    pProteins = expressGenes(parent, pGenes, found.pParentRows);
+
+    /* Copy the parent's inputs */
+    ArrayList<Protein> inputProteins = new ArrayList<Protein>();
+    for (int p = parent.tfProteins.length - parent.numberOfInputs; p < parent.tfProteins.length; p++)
+      inputProteins.add(new Protein(parent.tfProteins[p].concentration, parent.tfProteins[p].value));
+
+    /* Initialise concentrations */
+    calculateInputConcentration(inputProteins);
+    setInitialProteinConcentrations();
+
+    /* Add inputs */
+    numberOfInputs = inputProteins.size();
+    tfProteins = Arrays.copyOf(tfProteins, tfProteins.length + numberOfInputs);
+    for (int p = 0; p < numberOfInputs; p++)
+      tfProteins[tfGenes.length + p] = inputProteins.get(p);
+
+    /* Derive the precalculated tables from the parent's */
+    deriveTables(parent, found.tfParentRows, found.pParentRows);
+    built(start);
+  }
+
+  /**
+   * Express genes, taking the signature of each reused gene's protein
+   * from the parent instead of expressing it again.
+   *
+   * @param parent the network genes were reused from
+   * @param genes the genes to express
+   * @param parentRows parent table row of each gene, -1 if new
+   * @return one new protein per gene
+   */
+  private static Protein[] expressGenes(Grn parent, Gene[] genes, int[] parentRows) {
+    Protein[] proteins = new Protein[genes.length];
+    int parentTf = parent.tfGenes.length;
+    for (int i = 0; i < genes.length; i++) {
+      int row = parentRows[i];
+      if (row < 0)
+        proteins[i] = ProteinProducer.expressGenes(new Gene[] {genes[i]})[0];
+      else
+        proteins[i] = new Protein(0.0, row < parentTf ? parent.tfProteins[row].value
+                                  : parent.pProteins[row - parentTf].value);
+    }
+    return proteins;
+  }
+
+  /**
+   * Build the lookup table and weights of a mutant from its parent's.
+   * Where both the gene and the TF proteins come from the parent, runs
+   * of table entries and weights are copied from the parent's rows;
+   * the complementary bit counts of the rest are calculated.
+   *
+   * @param parent the network the tables are derived from
+   * @param tfParentRows parent table row of each TF gene, -1 if new
+   * @param pParentRows parent table row of each P gene, -1 if new
+   */
+  private void deriveTables(Grn parent, int[] tfParentRows, int[] pParentRows) {
+    long start = startTimer();
+    genomeUMax = -1;
+    syncState();
+    int[] signatures = state.signatures;
+    int n = state.tfLength();
+    int genes = tfGenes.length + pGenes.length;
+    int parentN = parent.tfProteins.length;
+
+    /* Parent row of each gene */
+    int[] rows = new int[genes];
+    System.arraycopy(tfParentRows, 0, rows, 0, tfGenes.length);
+    System.arraycopy(pParentRows, 0, rows, tfGenes.length, pGenes.length);
+
+    /* Parent column of each TF protein, inputs always coming from the parent */
+    int[] cols = new int[n];
+    System.arraycopy(tfParentRows, 0, cols, 0, tfGenes.length);
+    for (int k = 0; k < numberOfInputs; k++)
+      cols[tfGenes.length + k] = parent.tfGenes.length + k;
+
+    /* The parent's columns unchanged: share its rows rather than copy them */
+    boolean sameColumns = n == parentN && parent.workspace == null;
+    for (int j = 0; j < n && sameColumns; j++)
+      sameColumns = cols[j] == j;
+    if (sameColumns) {
+      shareTables(parent, rows, signatures, n);
+      kernel = StepKernel.create(engine, weights, tfGenes.length, pGenes.length, n, tolerance);
+      tablesBuilt(start, false);
+      return;
+    }
+
+    /* Runs of consecutive parent columns: start, parent start, length */
+    int[] runs = new int[3 * n];
+    int nRuns = 0;
+    for (int j = 0; j < n; j++) {
+      if (cols[j] < 0)
+        continue;
+      if (nRuns > 0 && runs[3*nRuns-3] + runs[3*nRuns-1] == j && runs[3*nRuns-2] + runs[3*nRuns-1] == cols[j]) {
+        runs[3*nRuns-1]++;
+      }
+      else {
+        runs[3*nRuns] = j;
+        runs[3*nRuns+1] = cols[j];
+        runs[3*nRuns+2] = 1;
+        nRuns++;
+      }
+    }
+
+    /*
+     * Copy the parent's entries, still relative to its umax, and count
+     * complementary bits for the rest, finding the maximum level of
+     * matching as the largest count or the smallest copied entry
+     */
+    cbits = new int[2][genes][n];
+    int newMax = -1, copiedMin = Integer.MAX_VALUE;
+    for (int g = 0; g < genes; g++) {
+      Gene gene = g < tfGenes.length ? tfGenes[g] : pGenes[g - tfGenes.length];
+      for (int type = 0; type < 2; type++) {
+        int[] row = cbits[type][g];
+        int site = type == 0 ? gene.enhancer : gene.inhibitor;
+        if (rows[g] < 0) {
+          for (int j = 0; j < n; j++) {
+            row[j] = ProteinProducer.countComplementaryBits(site, signatures[j]);
+            newMax = Math.max(newMax, row[j]);
+          }
+          continue;
+        }
+        int[] parentRow = parent.cbits[type][rows[g]];
+        for (int r = 0; r < nRuns; r++)
+          System.arraycopy(parentRow, runs[3*r+1], row, runs[3*r], runs[3*r+2]);
+        for (int j = 0; j < n; j++) {
+          if (cols[j] < 0) {
+            row[j] = ProteinProducer.countComplementaryBits(site, signatures[j]);
+            newMax = Math.max(newMax, row[j]);
+          }
+          else {
+            copiedMin = Math.min(copiedMin, row[j]);
+          }
+        }
+      }
+    }
+    umax = copiedMin == Integer.MAX_VALUE ? newMax : Math.max(newMax, parent.umax - copiedMin);
+
+    /* Bring every entry to umax - complementaryBitCount */
+    int shift = umax - parent.umax;
+    for (int type = 0; type < 2; type++)
+      for (int g = 0; g < genes; g++) {
+        int[] row = cbits[type][g];
+        for (int j = 0; j < n; j++)
+          if (rows[g] < 0 || cols[j] < 0)
+            row[j] = umax - row[j];
+          else
+            row[j] += shift;
+      }
+
+    /* Compile the weights, copying the parent's while umax is unchanged */
+    weights = new double[genes * n];
+    if (shift != 0) {
+      StepKernel.compileWeights(cbits, genes, n, weights);
+    }
+    else {
+      double[] exp = ProteinProducer.exp;
+      for (int g = 0; g < genes; g++) {
+        int[] enh = cbits[0][g];
+        int[] inh = cbits[1][g];
+        if (rows[g] >= 0)
+          for (int r = 0; r < nRuns; r++)
+            System.arraycopy(parent.weights, rows[g] * parentN + runs[3*r+1],
+                             weights, g * n + runs[3*r], runs[3*r+2]);
+        for (int j = 0; j < n; j++)
+          if (rows[g] < 0 || cols[j] < 0)
+            weights[g * n + j] = exp[enh[j]] - exp[inh[j]];
+      }
+    }
+    kernel = StepKernel.create(engine, weights, tfGenes.length, pGenes.length, n, tolerance);
+    tablesBuilt(start, false);
+  }
+
+  /**
+   * Build the lookup table and weights of a mutant whose TF proteins
+   * are the parent's, in the same order, so each reused gene's rows
+   * are the parent's rows. While umax is unchanged those rows are
+   * shared with the parent, and both copy them before writing; only
+   * the rows of new genes are calculated. The weights stay one
+   * contiguous matrix for the kernels, so reused rows are copied.
+   *
+   * @param parent the network the tables are derived from
+   * @param rows parent table row of each gene, -1 if new
+   * @param signatures the TF protein signatures
+   * @param n number of TF proteins, including inputs
+   */
+  private void shareTables(Grn parent, int[] rows, int[] signatures, int n) {
+    int genes = rows.length;
+    cbits = new int[2][genes][];
+
+    /* Count complementary bits for new genes */
+    int newMax = -1;
+    for (int g = 0; g < genes; g++) {
+      if (rows[g] >= 0)
+        continue;
+      Gene gene = g < tfGenes.length ? tfGenes[g] : pGenes[g - tfGenes.length];
+      for (int type = 0; type < 2; type++) {
+        int[] row = new int[n];
+        int site = type == 0 ? gene.enhancer : gene.inhibitor;
+        for (int j = 0; j < n; j++) {
+          row[j] = ProteinProducer.countComplementaryBits(site, signatures[j]);
+          newMax = Math.max(newMax, row[j]);
+        }
+        cbits[type][g] = row;
+      }
+    }
+
+    /* The smallest reused entry, stopping once the parent's own umax is found */
+    int copiedMin = Integer.MAX_VALUE;
+    for (int g = 0; g < genes && copiedMin > 0; g++)
+      if (rows[g] >= 0)
+        for (int type = 0; type < 2; type++)
+          for (int entry : parent.cbits[type][rows[g]])
+            copiedMin = Math.min(copiedMin, entry);
+    umax = copiedMin == Integer.MAX_VALUE ? newMax : Math.max(newMax, parent.umax - copiedMin);
+    int shift = umax - parent.umax;
+
+    /* Bring every entry to umax - complementaryBitCount */
+    for (int type = 0; type < 2; type++)
+      for (int g = 0; g < genes; g++) {
+        int[] row = cbits[type][g];
+        if (rows[g] < 0) {
+          for (int j = 0; j < n; j++)
+            row[j] = umax - row[j];
+        }
+        else if (shift == 0) {
+          cbits[type][g] = parent.cbits[type][rows[g]];
+        }
+        else {
+          row = parent.cbits[type][rows[g]].clone();
+          for (int j = 0; j < n; j++)
+            row[j] += shift;
+          cbits[type][g] = row;
+        }
+      }
+    if (shift == 0 && copiedMin != Integer.MAX_VALUE) {
+      tableShared = true;
+      parent.tableShared = true;
+    }
+
+    /* Compile the weights, copying the parent's rows while umax is unchanged */
+    weights = new double[genes * n];
+    if (shift != 0) {
+      StepKernel.compileWeights(cbits, genes, n, weights);
+    }
+    else {
+      double[] exp = ProteinProducer.exp;
+      for (int g = 0; g < genes; g++) {
+        if (rows[g] >= 0) {
+          System.arraycopy(parent.weights, rows[g] * n, weights, g * n, n);
+          continue;
+        }
+        int[] enh = cbits[0][g];
+        int[] inh = cbits[1][g];
+        for (int j = 0; j < n; j++)
+          weights[g * n + j] = exp[enh[j]] - exp[inh[j]];
+      }
+    }
+  }
+
   /**
    * Precalculate a lookup table of the degree of matching between
    * each TF protein and regulatory site in the network. 
@@ -170,38 +588,130 @@ public class Grn {
    * between a protein's signature and a regulatory site's value. This
    * is in the range of [0,32].
    *
-   * The lookup table is populated with umax - complementaryBitCount.
+   * The lookup table is populated with umax - complementaryBitCount,
+   * and then compiled into the dense weight matrix used by run().
    */
   private void generateTables() {
-    /* Initialise the cbits array */
-    ProteinProducer.cbits = new int[2][tfGenes.length+pGenes.length][tfProteins.length];
-    for (int i = 0; i < 2; i++)
-      for (int j = 0; j < tfGenes.length + pGenes.length; j++)
-        for (int k = 0; k < tfProteins.length; k++)
-          ProteinProducer.cbits[i][j][k] = -1;
+    long start = startTimer();
+    genomeUMax = -1;
+    syncState();
+    int[] signatures = state.signatures;
+    int n = state.tfLength();
 
     /* Find the maximum level of matching */
     umax = -1;
     for (Gene g : tfGenes) {
       int temp;
-      if ((temp = ProteinProducer.calculateUMax(g, tfProteins)) > umax)
+      if ((temp = ProteinProducer.calculateUMax(g, signatures, n)) > umax)
         umax = temp;
     }
     for (Gene g : pGenes) {
       int temp;
-      if ((temp = ProteinProducer.calculateUMax(g, tfProteins)) > umax)
+      if ((temp = ProteinProducer.calculateUMax(g, signatures, n)) > umax)
         umax = temp;
     }
 
-    /* Populate the table by expressing each gene once */
+    /* Populate the table, one pair of rows per gene */
+    int genes = tfGenes.length + pGenes.length;
+    cbits = workspace == null ? new int[2][genes][n] : workspace.matchTable(genes, n);
+    tableShared = false;
     for (int i = 0; i < tfGenes.length;  i++) {
       tfGenes[i].index = i;
-      ProteinProducer.produce(tfGenes[i], tfProteins[i], tfProteins, umax);
+      ProteinProducer.matchRows(tfGenes[i], signatures, n, umax, cbits[0][i], cbits[1][i]);
     }
     for (int i = 0; i < pGenes.length;  i++) {
       pGenes[i].index = tfGenes.length+i;
-      ProteinProducer.p_produce(pGenes[i], pProteins[i], tfProteins, umax);
+      ProteinProducer.matchRows(pGenes[i], signatures, n, umax, cbits[0][tfGenes.length+i], cbits[1][tfGenes.length+i]);
     }
+
+    /* Compile the table into the step kernel */
+    weights = workspace == null ? new double[genes * n] : workspace.weights(genes * n);
+    StepKernel.compileWeights(cbits, genes, n, weights);
+    kernel = StepKernel.create(engine, weights, tfGenes.length, pGenes.length, n, tolerance);
+    tablesBuilt(start, true);
+  }
+
+  /**
+   * Select the step implementation used by run(). The compiled weights
+   * are kept, only the kernel is swapped. Requesting VECTOR where the
+   * Vector API is unavailable leaves the network on the scalar kernel.
+   *
+   * @param engine the requested engine
+   */
+  public void setEngine(StepKernel.Engine engine) {
+    this.engine = engine;
+    kernel = StepKernel.create(engine, weights, tfGenes.length, pGenes.length, tfProteins.length, tolerance);
+  }
+
+  /**
+   * @return the engine requested for this network
+   */
+  public StepKernel.Engine getEngine() {
+    return engine;
+  }
+
+  /**
+   * Set the magnitude at or below which the SPARSE engine drops
+   * weights, rebuilding the kernel if it is in use.
+   *
+   * @param tolerance weights no larger than this are dropped
+   */
+  public void setSparseTolerance(double tolerance) {
+    if (!(tolerance >= 0))
+      throw new IllegalArgumentException("Tolerance must not be negative: "+tolerance);
+    this.tolerance = tolerance;
+    if (engine == StepKernel.Engine.SPARSE)
+      setEngine(engine);
+  }
+
+  /**
+   * @return the magnitude at or below which the SPARSE engine drops weights
+   */
+  public double getSparseTolerance() {
+    return tolerance;
+  }
+
+  /**
+   * Report the construction and runs of every network, e.g. to a
+   * MetricsCounter or as JFR events with JfrMetrics.
+   *
+   * @param metrics where to report, or null or Metrics.NONE to stop measuring
+   */
+  public static void setMetrics(Metrics metrics) {
+    Grn.metrics = metrics == null ? Metrics.NONE : metrics;
+  }
+
+  /**
+   * @return where construction and runs are reported
+   */
+  public static Metrics getMetrics() {
+    return metrics;
+  }
+
+  /**
+   * @return the time now if measuring, 0 otherwise
+   */
+  static long startTimer() {
+    return metrics == Metrics.NONE ? 0 : System.nanoTime();
+  }
+
+  private void built(long start) {
+    Metrics m = metrics;
+    if (start != 0 && m != Metrics.NONE)
+      m.networkBuilt(tfGenes.length, pGenes.length, numberOfInputs, umax, System.nanoTime() - start);
+  }
+
+  private void tablesBuilt(long start, boolean full) {
+    Metrics m = metrics;
+    if (start != 0 && m != Metrics.NONE)
+      m.tablesBuilt(tfGenes.length + pGenes.length, state.tfLength(), umax, full, System.nanoTime() - start);
+  }
+
+  private void ran(long start, int steps, boolean initialising, boolean atRest) {
+    Metrics m = metrics;
+    if (start != 0 && m != Metrics.NONE)
+      m.ran(tfGenes.length + pGenes.length, state.concentrations.length, steps, initialising, atRest,
+            System.nanoTime() - start);
   }
 
   /**
@@ -231,48 +741,59 @@ public class Grn {
    * Input TF proteins are not affected.
    */
   private void normaliseTFProteinConcentrations() {
-    double total = 0;
-    for (int i = 0; i < tfProteins.length-numberOfInputs; i++)
-      total += tfProteins[i].concentration;
-
-    if (total > 0.0)
-      for (int i = 0; i < tfProteins.length; i++)
-        if (i  < tfProteins.length-numberOfInputs) {
-          tfProteins[i].concentration *= 1.0 - inputConcentration;
-          tfProteins[i].concentration /= total;
-        }
+    syncState();
+    state.normaliseTF();
+    state.scatter(tfProteins, pProteins);
+  }
+
+  /**
+   * Bring the protein state in line with the protein objects,
+   * reusing its arrays when the shape is unchanged.
+   */
+  void syncState() {
+    if (state == null || !state.fits(tfProteins, numberOfInputs, pProteins))
+      state = new ProteinState(tfProteins.length - numberOfInputs, numberOfInputs, pProteins.length);
+    state.gather(tfProteins, pProteins);
   }
 
   /**
    * Checks if the model is at rest. For each protein, check if its
    * concentration has changed more than REST_EPSILON over the last
-   * REST_STEP time steps.
+   * REST_STEP time steps. Also used by SimulationState and SteadyStateSolver.
    *
-   * @param results the model data
+   * @param window the last REST_STEP+1 states, indexed by t % (REST_STEP+1),
+   * whose rows may be longer than n
    * @param t the current timestep
+   * @param n number of proteins
    * @result whether the model has leveled out or not
    */
-  private boolean atRest(double[][] results, int t) {
+  static boolean atRest(double[][] window, int t, int n) {
     /* Wait until at least REST_STEP time steps have passed */
     if (t < REST_STEP)
       return false;
 
-    /* Check TF proteins */
-    for (int i = 0; i < tfProteins.length; i++)
-      if (Math.abs(results[t][i] - results[t-REST_STEP][i]) > REST_EPSILON) {
-        return false;
-      }
+    double[] now = window[t % (REST_STEP+1)];
+    double[] then = window[(t-REST_STEP) % (REST_STEP+1)];
 
-    /* Check P proteins */
-    for (int i = 0; i < pProteins.length; i++)
-      if (Math.abs(results[t][tfProteins.length+i] -
-                   results[t-REST_STEP][tfProteins.length+i]) > REST_EPSILON) {
+    /* Check TF proteins, then P proteins */
+    for (int i = 0; i < n; i++)
+      if (Math.abs(now[i] - then[i]) > REST_EPSILON) {
         return false;
       }
 
     return true;
   }
 
+  /**
+   * @param n number of proteins
+   * @return storage for the last REST_STEP+1 states of the model
+   */
+  private double[][] restWindow(int n) {
+    if (workspace != null)
+      return workspace.trajectory(REST_STEP+1, n);
+    return new double[REST_STEP+1][n];
+  }
+
   /**
    * Inject input proteins into the model (replacing the current inputs)
    *
@@ -280,7 +801,8 @@ public class Grn {
    */
   public void injectInputs(ArrayList<Protein> inputProteins) {
     /* If the incorrect size size, then resize */
-    if (inputProteins.size() != numberOfInputs)
+    boolean resized = inputProteins.size() != numberOfInputs;
+    if (resized)
       tfProteins = Arrays.copyOf(tfProteins, tfProteins.length - numberOfInputs+inputProteins.size());
 
     /* Add the new inputs */
@@ -292,8 +814,77 @@ public class Grn {
     /* Normalise the rest of the TF concnetrations */
     normaliseTFProteinConcentrations();
 
-    /* Regenerate the concentration tables */
-    generateTables(); //FIX ME: This should just be for these input proteins, not the entire model
+    /* Update the tables, in full only if their shape changed */
+    if (resized)
+      generateTables();
+    else
+      updateInputColumns();
+  }
+
+  /**
+   * Recalculate the lookup table columns of the input proteins after
+   * their signatures were replaced. The rest of the table and the
+   * weights only change if umax does, in which case every entry is
+   * shifted and the weights recompiled; otherwise only the input
+   * columns of the weights are rewritten, in place.
+   */
+  private void updateInputColumns() {
+    long start = startTimer();
+    int[] signatures = state.signatures;
+    int n = state.tfLength();
+    int nTf = state.nTf;
+    int genes = tfGenes.length + pGenes.length;
+
+    /* Rows shared with another network are copied before being written */
+    if (tableShared) {
+      for (int type = 0; type < 2; type++)
+        for (int g = 0; g < genes; g++)
+          cbits[type][g] = cbits[type][g].clone();
+      tableShared = false;
+    }
+
+    /* Greatest match among the genome's own proteins, found once */
+    if (genomeUMax < 0)
+      for (int type = 0; type < 2; type++)
+        for (int g = 0; g < genes; g++)
+          for (int j = 0; j < nTf; j++)
+            genomeUMax = Math.max(genomeUMax, umax - cbits[type][g][j]);
+
+    /* Count the input columns, finding their greatest match */
+    int inputUMax = -1;
+    for (int g = 0; g < genes; g++) {
+      Gene gene = g < tfGenes.length ? tfGenes[g] : pGenes[g - tfGenes.length];
+      for (int j = nTf; j < n; j++) {
+        cbits[0][g][j] = ProteinProducer.countComplementaryBits(gene.enhancer, signatures[j]);
+        cbits[1][g][j] = ProteinProducer.countComplementaryBits(gene.inhibitor, signatures[j]);
+        inputUMax = Math.max(inputUMax, Math.max(cbits[0][g][j], cbits[1][g][j]));
+      }
+    }
+
+    int shift = Math.max(genomeUMax, inputUMax) - umax;
+    umax += shift;
+    for (int type = 0; type < 2; type++)
+      for (int g = 0; g < genes; g++) {
+        int[] row = cbits[type][g];
+        if (shift != 0)
+          for (int j = 0; j < nTf; j++)
+            row[j] += shift;
+        for (int j = nTf; j < n; j++)
+          row[j] = umax - row[j];
+      }
+
+    /* Rewrite the weights the kernel runs against */
+    if (shift != 0) {
+      StepKernel.compileWeights(cbits, genes, n, weights);
+    }
+    else {
+      double[] exp = ProteinProducer.exp;
+      for (int g = 0; g < genes; g++)
+        for (int j = nTf; j < n; j++)
+          weights[g * n + j] = exp[cbits[0][g][j]] - exp[cbits[1][g][j]];
+    }
+    kernel.weightsChanged(weights);
+    tablesBuilt(start, false);
   }
 
   /**
@@ -305,6 +896,86 @@ public class Grn {
     initResults = run(INIT_PERIOD, true);
   }
 
+  /**
+   * Initialise the model as init() does, streaming the stabilisation
+   * steps to a sink instead of keeping them in initResults.
+   *
+   * @param sink receives the state at each time step
+   * @return the time step at which the model came to rest, or INIT_PERIOD
+   */
+  public int init(TrajectorySink sink) {
+    return run(INIT_PERIOD, true, sink);
+  }
+
+  /**
+   * @return the time step at which the last init() or SteadyStateSolver
+   * came to rest, INIT_PERIOD if it did not, or -1 if the network has
+   * not been initialised
+   */
+  public int getRestStep() {
+    return restStep;
+  }
+
+  /**
+   * Record the time step at which the network came to rest, for
+   * initialisers other than init().
+   *
+   * @param restStep the step, or INIT_PERIOD if it did not come to rest
+   */
+  void setRestStep(int restStep) {
+    this.restStep = restStep;
+  }
+
+  /**
+   * Take a snapshot of the network's simulation state: the
+   * concentrations, the input proteins and the rest step.
+   *
+   * @return the snapshot
+   */
+  public Snapshot snapshot() {
+    syncState();
+    return new Snapshot(Snapshot.fingerprint(getGRNEncoding()), state.nTf, state.nInputs, state.nP, restStep,
+                        Arrays.copyOfRange(state.signatures, state.nTf, state.tfLength()),
+                        state.concentrations.clone());
+  }
+
+  /**
+   * Put the network back in the state of a snapshot of it, or of
+   * another network with the same genes. The snapshot's inputs are
+   * injected if they differ from the network's, otherwise only the
+   * concentrations are copied. The results matrices are left as they
+   * are.
+   *
+   * @param snapshot a snapshot of this network
+   * @throws IllegalArgumentException if the snapshot is of a different network
+   */
+  public void restore(Snapshot snapshot) {
+    if (snapshot.nTf != tfGenes.length || snapshot.nP != pGenes.length
+        || snapshot.fingerprint != Snapshot.fingerprint(getGRNEncoding()))
+      throw new IllegalArgumentException("Snapshot is of a different network");
+    double[] c = snapshot.concentrations;
+
+    /* Bring in the snapshot's inputs, unless they are those already held */
+    boolean same = snapshot.nInputs == numberOfInputs;
+    for (int k = 0; same && k < numberOfInputs; k++) {
+      Protein p = tfProteins[tfGenes.length + k];
+      same = p.value == snapshot.inputSignatures[k] && p.concentration == c[tfGenes.length + k];
+    }
+    if (!same) {
+      /* injectInputs() places the last of the list first */
+      ArrayList<Protein> inputs = snapshot.getInputProteins();
+      Collections.reverse(inputs);
+      injectInputs(inputs);
+    }
+
+    for (int i = 0; i < tfGenes.length; i++)
+      tfProteins[i].concentration = c[i];
+    for (int i = 0; i < pProteins.length; i++)
+      pProteins[i].concentration = c[tfProteins.length + i];
+    syncState();
+    restStep = snapshot.restStep;
+  }
+
   /**
    * Iterate the network. 
    * 
@@ -316,76 +987,107 @@ public class Grn {
    * @return a new array containing the concentration values of all proteins at each timestep.
    */
   public double[][] run(int timeSteps, boolean initialising) {
-    /* Results array */
-    results = new double[timeSteps+1][tfProteins.length+pProteins.length];
+    MatrixSink sink = new MatrixSink();
+    run(timeSteps, initialising, sink);
+    results = sink.getResults();
+    return results;
+  }
 
-    /* Iterate the network */
-    int t;
-    for (t = 0; t < timeSteps && (initialising ? !atRest(results, t - 1) : true); t++) {
+  /**
+   * Iterate the network, handing the state at each time step to a
+   * sink rather than keeping a results matrix. Apart from the sink's
+   * own storage, memory is independent of the number of time steps.
+   *
+   * @param timeSteps the length of the synchronisation step
+   * @param initialising whether to check for, and halt on a stable state
+   * @param sink receives the state at each time step
+   * @return the time step of the final state
+   */
+  public int run(int timeSteps, boolean initialising, TrajectorySink sink) {
+    return run(timeSteps, initialising, null, sink);
+  }
 
-      /* Record the current state */
-      for (int i = 0; i < tfProteins.length; i++)
-        results[t][i] = tfProteins[i].concentration;
-      for (int i = 0; i < pProteins.length; i++)
-        results[t][tfProteins.length+i] = pProteins[i].concentration;
-
-      /* Calculate production rates */
-      double[] geneProductionRates = new double[tfGenes.length];
-      double[] pGeneProductionRates = new double[pGenes.length];
-      for (int i = 0; i < tfGenes.length;  i++) {
-        tfGenes[i].index = i;
-        geneProductionRates[i] = ProteinProducer.produce(tfGenes[i], tfProteins[i], tfProteins, umax);
-      }
-      for (int i = 0; i < pGenes.length;  i++) {
-        pGenes[i].index = tfGenes.length+i;
-        pGeneProductionRates[i] = ProteinProducer.p_produce(pGenes[i], pProteins[i], tfProteins, umax);
-      }
+  /**
+   * Iterate the network while its input concentrations follow a
+   * schedule. At the start of each time step the schedule's inputs are
+   * applied and, if they changed, the TF proteins renormalised, as
+   * injectInputs() would; the weights stay valid as input signatures
+   * do not change. On return the input proteins hold the last
+   * concentrations applied.
+   *
+   * @param timeSteps the length of the synchronisation step
+   * @param schedule the input concentrations at each time step
+   * @return a new array containing the concentration values of all proteins at each timestep.
+   */
+  public double[][] run(int timeSteps, InputSchedule schedule) {
+    MatrixSink sink = new MatrixSink();
+    run(timeSteps, false, schedule, sink);
+    results = sink.getResults();
+    return results;
+  }
 
-      /* Update protein concentrations c += dc/dt */
-      for (int i = 0; i < tfGenes.length;  i++) {
-        tfProteins[i].concentration += geneProductionRates[i];
-        if (tfProteins[i].concentration < ZERO)
-          tfProteins[i].concentration = ZERO;
-      }
-      for (int i = 0; i < pGenes.length;  i++) {
-        pProteins[i].concentration += pGeneProductionRates[i];
-        if (pProteins[i].concentration < ZERO)
-          pProteins[i].concentration = ZERO;
-      }
+  /**
+   * Iterate the network while its input concentrations follow a
+   * schedule, handing the state at each time step to a sink.
+   *
+   * @param timeSteps the length of the synchronisation step
+   * @param schedule the input concentrations at each time step
+   * @param sink receives the state at each time step
+   * @return the time step of the final state
+   */
+  public int run(int timeSteps, InputSchedule schedule, TrajectorySink sink) {
+    return run(timeSteps, false, schedule, sink);
+  }
 
-      /* Re-normalise TF concentration levels */
-      double total = 0;
-      for (int i = 0; i < tfProteins.length-numberOfInputs; i++)
-        total += tfProteins[i].concentration;
+  /**
+   * Iterate the network, applying scheduled inputs if there are any.
+   */
+  private int run(int timeSteps, boolean initialising, InputSchedule schedule, TrajectorySink sink) {
+    /* Gather the current state into the flat concentration vector */
+    syncState();
+    double[] c = state.concentrations;
+    double[][] window = initialising ? restWindow(c.length) : null;
+    double[] inputs = schedule == null ? null : Arrays.copyOfRange(c, state.nTf, state.tfLength());
 
-      if (total > 0.0)
-        for (int i = 0; i < tfProteins.length; i++) {
-          if (i  < tfProteins.length-numberOfInputs) {
-            tfProteins[i].concentration *= 1.0 - inputConcentration;
-            tfProteins[i].concentration /= total;
-          }
+    sink.begin(state.nTf, state.nInputs, state.nP, timeSteps);
+    long start = startTimer();
+
+    /* Iterate the network */
+    int t;
+    for (t = 0; t < timeSteps && (initialising ? !atRest(window, t - 1, c.length) : true); t++) {
+
+      /* Apply this step's inputs */
+      if (schedule != null) {
+        schedule.inputsAt(t, inputs);
+        state.applyInputs(inputs);
       }
 
-      /* Re-normalise P concentration levels */
-      total = 0;
-      for (Protein p : pProteins)
-        total += p.concentration;
+      /* Record the current state */
+      sink.record(t, c);
+      if (initialising)
+        System.arraycopy(c, 0, window[t % (REST_STEP+1)], 0, c.length);
 
-      if (total > 0.0)
-        for (int i = 0; i < pProteins.length; i++) {
-          pProteins[i].concentration /= total;
-        }
+      /* Regulate, update and re-normalise concentration levels */
+      kernel.step(c, state.inputConcentration);
     }
 
+    ran(start, t, initialising, initialising && t < timeSteps);
+    if (initialising)
+      restStep = t;
+
     //Record the final state
-    for (int i = 0; i < tfProteins.length; i++)
-      results[t][i] = tfProteins[i].concentration;
-    for (int i = 0; i < pProteins.length; i++)
-      results[t][tfProteins.length+i] = pProteins[i].concentration;
+    sink.record(t, c);
+    sink.end(t);
+    state.scatter(tfProteins, pProteins);
+    if (schedule != null) {
+      for (int k = 0; k < numberOfInputs; k++)
+        tfProteins[state.nTf + k].concentration = c[state.nTf + k];
+      inputConcentration = state.inputConcentration;
+    }
 
-    return results;
+    return t;
   }
-  
+
   /**
    * Constructs a random GRN and runs it for a sync of 2000 time steps without inputs.
    * @param args Optionally contains an integer seed
@@ -420,6 +1122,18 @@ public class Grn {
    * @return array of codon values encoding all genes
    */
   public int[] getGRNEncoding() {
+    return getGRNEncoding(tfGenes, pGenes);
+  }
+
+  /**
+   * Return an integer array of the integer representations of each
+   * gene and its components, TF genes first.
+   *
+   * @param tfGenes the TF genes of a network
+   * @param pGenes the P genes of a network
+   * @return array of codon values encoding all genes
+   */
+  public static int[] getGRNEncoding(Gene[] tfGenes, Gene[] pGenes) {
     int[] codons = new int[(tfGenes.length + pGenes.length) * Gene.SIZE];
     int i = 0;
     for (Gene g : tfGenes) {
@@ -0,0 +1,20 @@
+package grn;
+
+/**
+ * Input protein concentrations as a function of time, applied by
+ * Grn.run() at the start of each time step. Input signatures are
+ * fixed for the run, so only the concentrations change.
+ */
+public interface InputSchedule {
+
+  /**
+   * Write the input concentrations for a time step. The array holds
+   * the concentrations of the previous step, so a schedule may leave
+   * it unchanged. Called once per time step, in order, from 0.
+   *
+   * @param t the time step about to be recorded and iterated
+   * @param concentrations the input concentrations, in the order the
+   * input proteins appear in grn.tfProteins
+   */
+  void inputsAt(int t, double[] concentrations);
+}
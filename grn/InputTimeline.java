@@ -0,0 +1,27 @@
+package grn;
+
+/**
+ * An input schedule read from a precomputed table of concentrations.
+ * Row t holds the input concentrations for time step t; once the
+ * table runs out the last row is held.
+ */
+public class InputTimeline implements InputSchedule {
+
+  /** Time steps x input proteins concentrations */
+  private final double[][] timeline;
+
+  /**
+   * @param timeline time steps x input proteins concentrations, in the
+   * order the input proteins appear in grn.tfProteins
+   */
+  public InputTimeline(double[][] timeline) {
+    if (timeline.length == 0)
+      throw new IllegalArgumentException("Empty input timeline");
+    this.timeline = timeline;
+  }
+
+  public void inputsAt(int t, double[] concentrations) {
+    double[] row = timeline[Math.min(t, timeline.length - 1)];
+    System.arraycopy(row, 0, concentrations, 0, concentrations.length);
+  }
+}
@@ -0,0 +1,249 @@
+package grn;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A bounded cache of built networks, shared between threads.
+ *
+ * Networks are cached by content rather than by chromosome: two
+ * chromosomes that locate the same genes in the same order build the
+ * same network, given the same inputs. Lookups go through two levels.
+ * The first maps an exact chromosome to the genes located in it, so a
+ * repeated chromosome is never scanned again. The second maps the
+ * gene encoding of Grn.getGRNEncoding(), with the input proteins'
+ * signatures and concentrations, to a built network, so a repeated
+ * network skips gene expression, table generation and, if it was
+ * cached initialised, init() too.
+ *
+ * Each level holds at most a fixed number of entries, evicting the
+ * least recently used. Cached networks are never handed out; every
+ * get() returns a copy with its own proteins, lookup table and
+ * weights, sharing only the Gene objects located in its chromosome, so
+ * gene locations are right for building point mutants from it. Networks are built outside
+ * the cache's lock, so two threads missing on the same network at
+ * once may both build it.
+ */
+public class NetworkCache {
+
+  /** Largest number of entries held in each level */
+  private final int capacity;
+
+  /** Chromosome to located genes */
+  private final Map<Key, Genome> genomes;
+
+  /** Gene encoding and inputs to built network */
+  private final Map<Key, Grn> networks;
+
+  private final AtomicLong genomeHits = new AtomicLong();
+  private final AtomicLong genomeMisses = new AtomicLong();
+  private final AtomicLong hits = new AtomicLong();
+  private final AtomicLong misses = new AtomicLong();
+  private final AtomicLong evictions = new AtomicLong();
+
+  /**
+   * @param capacity largest number of chromosomes, and of networks, held
+   */
+  public NetworkCache(int capacity) {
+    if (capacity < 1)
+      throw new IllegalArgumentException("Cache capacity must be positive: "+capacity);
+    this.capacity = capacity;
+    genomes = new Lru<Genome>();
+    networks = new Lru<Grn>();
+  }
+
+  /**
+   * Get a network for a chromosome, as new Grn(codons, inputProteins)
+   * would build it and, if requested, after init(). Initialised and
+   * uninitialised networks are cached separately. A network copied
+   * from the cache does not have initResults.
+   *
+   * @param codons 32 bit integers making up the binary string
+   * @param inputProteins list of input TF proteins, used by the network
+   * @param initialise whether the network should be initialised
+   * @return a network owned by the caller
+   */
+  public Grn get(int[] codons, ArrayList<Protein> inputProteins, boolean initialise) {
+    /* Locate the genes, unless this chromosome was seen before */
+    Key genomeKey = new Key(codons.clone());
+    Genome genome;
+    synchronized (this) {
+      genome = genomes.get(genomeKey);
+    }
+    if (genome != null) {
+      genomeHits.incrementAndGet();
+    }
+    else {
+      genomeMisses.incrementAndGet();
+      BitScanner hunter = new WordBitScanner(codons);
+      genome = new Genome(hunter.getTFGenes(), hunter.getPGenes());
+      synchronized (this) {
+        genomes.put(genomeKey, genome);
+      }
+    }
+
+    /* Copy the network, unless these genes and inputs were not seen before */
+    Key networkKey = new Key(genome.encoding, inputProteins, initialise);
+    Grn cached;
+    synchronized (this) {
+      cached = networks.get(networkKey);
+    }
+    if (cached != null) {
+      hits.incrementAndGet();
+      Grn grn = new Grn(cached, inputProteins);
+      /* The cached network's genes may lie elsewhere in another chromosome */
+      grn.chromosome = codons;
+      grn.tfGenes = genome.tfGenes;
+      grn.pGenes = genome.pGenes;
+      return grn;
+    }
+
+    misses.incrementAndGet();
+    Grn grn = new Grn(genome.tfGenes, genome.pGenes, inputProteins);
+    grn.chromosome = codons;
+    if (initialise)
+      grn.init();
+    synchronized (this) {
+      networks.put(networkKey, new Grn(grn, null));
+    }
+    return grn;
+  }
+
+  /**
+   * @return number of chromosomes whose genes were already located
+   */
+  public long getGenomeHits() {
+    return genomeHits.get();
+  }
+
+  /**
+   * @return number of chromosomes that had to be scanned
+   */
+  public long getGenomeMisses() {
+    return genomeMisses.get();
+  }
+
+  /**
+   * @return number of networks copied from the cache
+   */
+  public long getHits() {
+    return hits.get();
+  }
+
+  /**
+   * @return number of networks that had to be built or initialised
+   */
+  public long getMisses() {
+    return misses.get();
+  }
+
+  /**
+   * @return number of chromosomes and networks evicted
+   */
+  public long getEvictions() {
+    return evictions.get();
+  }
+
+  /**
+   * @return number of networks currently cached
+   */
+  public synchronized int size() {
+    return networks.size();
+  }
+
+  /**
+   * Remove every entry. Counters are kept.
+   */
+  public synchronized void clear() {
+    genomes.clear();
+    networks.clear();
+  }
+
+  public String toString() {
+    return "NetworkCache["+size()+"/"+capacity+" networks, "+hits+" hits, "+misses+" misses, "
+      +evictions+" evictions, "+genomeHits+" genome hits, "+genomeMisses+" genome misses]";
+  }
+
+  /**
+   * The genes located in a chromosome.
+   */
+  private static class Genome {
+    final Gene[] tfGenes;
+    final Gene[] pGenes;
+    final int[] encoding;
+
+    Genome(Gene[] tfGenes, Gene[] pGenes) {
+      this.tfGenes = tfGenes;
+      this.pGenes = pGenes;
+      this.encoding = Grn.getGRNEncoding(tfGenes, pGenes);
+    }
+  }
+
+  /**
+   * A cache key of codons and, for networks, the input proteins and
+   * whether the network is initialised, compared by value.
+   */
+  private static final class Key {
+    private final int[] codons;
+    private final int[] signatures;
+    private final double[] concentrations;
+    private final boolean initialised;
+    private final int hash;
+
+    Key(int[] codons) {
+      this(codons, null, false);
+    }
+
+    Key(int[] codons, ArrayList<Protein> inputProteins, boolean initialised) {
+      this.codons = codons;
+      this.initialised = initialised;
+      int n = inputProteins == null ? 0 : inputProteins.size();
+      signatures = new int[n];
+      concentrations = new double[n];
+      for (int p = 0; p < n; p++) {
+        signatures[p] = inputProteins.get(p).value;
+        concentrations[p] = inputProteins.get(p).concentration;
+      }
+      hash = 31 * (31 * (31 * Arrays.hashCode(codons) + Arrays.hashCode(signatures))
+                   + Arrays.hashCode(concentrations)) + (initialised ? 1 : 0);
+    }
+
+    @Override
+    public int hashCode() {
+      return hash;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (!(o instanceof Key))
+        return false;
+      Key k = (Key)o;
+      return hash == k.hash && initialised == k.initialised && Arrays.equals(codons, k.codons)
+        && Arrays.equals(signatures, k.signatures)
+        && Arrays.equals(concentrations, k.concentrations);
+    }
+  }
+
+  /**
+   * An access ordered map dropping its least recently used entry once
+   * over capacity.
+   */
+  private class Lru<V> extends LinkedHashMap<Key, V> {
+    private static final long serialVersionUID = 1L;
+
+    Lru() {
+      super(16, 0.75f, true);
+    }
+
+    @Override
+    protected boolean removeEldestEntry(Map.Entry<Key, V> eldest) {
+      if (size() <= capacity)
+        return false;
+      evictions.incrementAndGet();
+      return true;
+    }
+  }
+}
@@ -0,0 +1,176 @@
+package grn;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import grn.sink.FinalStateSink;
+
+/**
+ * Builds and runs a population of networks in parallel on a
+ * work-stealing ForkJoin pool.
+ *
+ * Each worker thread keeps a Workspace, so the lookup tables, weights
+ * and state buffers are reused from one genome to the next instead of
+ * allocated per genome. No trajectory is kept: only the final state
+ * of each network is returned, in the same order as the chromosomes.
+ */
+public class PopulationEvaluator {
+
+  /** Genomes evaluated per leaf task before work is split further */
+  private static final int GRAIN = 4;
+
+  /** Per worker storage */
+  private static final ThreadLocal<Workspace> WORKSPACES = new ThreadLocal<Workspace>() {
+    @Override
+    protected Workspace initialValue() {
+      return new Workspace();
+    }
+  };
+
+  /** The pool genomes are evaluated on */
+  private final ForkJoinPool pool;
+
+  /** Step implementation used by every network */
+  private StepKernel.Engine engine = StepKernel.Engine.SCALAR;
+
+  /** Weights the SPARSE engine drops */
+  private double tolerance = SparseStepKernel.DEFAULT_TOLERANCE;
+
+  /**
+   * Creates an evaluator on the common ForkJoin pool.
+   */
+  public PopulationEvaluator() {
+    this(ForkJoinPool.commonPool());
+  }
+
+  /**
+   * Creates an evaluator on the given pool.
+   *
+   * @param pool the pool to evaluate genomes on
+   */
+  public PopulationEvaluator(ForkJoinPool pool) {
+    this.pool = pool;
+  }
+
+  /**
+   * @param engine the step implementation used by every network
+   */
+  public void setEngine(StepKernel.Engine engine) {
+    this.engine = engine;
+  }
+
+  /**
+   * @param tolerance weights the SPARSE engine drops, see Grn.setSparseTolerance()
+   */
+  public void setSparseTolerance(double tolerance) {
+    if (!(tolerance >= 0))
+      throw new IllegalArgumentException("Tolerance must not be negative: "+tolerance);
+    this.tolerance = tolerance;
+  }
+
+  /**
+   * Build, initialise and run each chromosome without inputs.
+   *
+   * @param chromosomes the genomes to evaluate
+   * @param syncLength number of time steps to run after initialisation
+   * @return the final concentrations of each network, in input order
+   */
+  public List<double[]> evaluate(List<int[]> chromosomes, int syncLength) {
+    int[] syncLengths = new int[chromosomes.size()];
+    Arrays.fill(syncLengths, syncLength);
+    return evaluate(chromosomes, null, syncLengths, true);
+  }
+
+  /**
+   * Build and run each chromosome with its own input proteins and sync
+   * length. Input proteins are copied, so the same list may be passed
+   * for several genomes.
+   *
+   * @param chromosomes the genomes to evaluate
+   * @param inputs input proteins per genome, or null for no inputs
+   * @param syncLengths number of time steps to run per genome
+   * @param initialise whether to run init() before the sync
+   * @return the final concentrations of each network laid out as a
+   * row of Grn.results, in input order
+   */
+  public List<double[]> evaluate(List<int[]> chromosomes, List<? extends List<Protein>> inputs,
+                                 int[] syncLengths, boolean initialise) {
+    if (inputs != null && inputs.size() != chromosomes.size())
+      throw new IllegalArgumentException("Expected "+chromosomes.size()+" input sets, got "+inputs.size());
+    if (syncLengths.length != chromosomes.size())
+      throw new IllegalArgumentException("Expected "+chromosomes.size()+" sync lengths, got "+syncLengths.length);
+
+    double[][] finals = new double[chromosomes.size()][];
+    pool.invoke(new Evaluation(chromosomes, inputs, syncLengths, initialise, finals, 0, finals.length));
+    return Arrays.asList(finals);
+  }
+
+  /**
+   * Build and run a single genome on the calling thread's workspace.
+   */
+  private double[] evaluate(int[] codons, List<Protein> inputs, int syncLength, boolean initialise) {
+    Workspace workspace = WORKSPACES.get();
+
+    ArrayList<Protein> inputProteins = new ArrayList<Protein>();
+    if (inputs != null)
+      for (Protein p : inputs)
+        inputProteins.add(new Protein(p.concentration, p.value));
+
+    Grn grn = new Grn(codons, inputProteins, workspace);
+    if (engine == StepKernel.Engine.SPARSE)
+      grn.setSparseTolerance(tolerance);
+    if (engine != StepKernel.Engine.SCALAR)
+      grn.setEngine(engine);
+
+    FinalStateSink sink = workspace.finalState();
+    if (initialise)
+      grn.init(sink);
+    grn.run(syncLength, false, sink);
+
+    return sink.getState().clone();
+  }
+
+  /**
+   * Evaluates a range of the population, splitting it while it is
+   * larger than GRAIN.
+   */
+  private class Evaluation extends RecursiveAction {
+    private static final long serialVersionUID = 1L;
+
+    private final List<int[]> chromosomes;
+    private final List<? extends List<Protein>> inputs;
+    private final int[] syncLengths;
+    private final boolean initialise;
+    private final double[][] finals;
+    private final int from;
+    private final int to;
+
+    Evaluation(List<int[]> chromosomes, List<? extends List<Protein>> inputs, int[] syncLengths,
+               boolean initialise, double[][] finals, int from, int to) {
+      this.chromosomes = chromosomes;
+      this.inputs = inputs;
+      this.syncLengths = syncLengths;
+      this.initialise = initialise;
+      this.finals = finals;
+      this.from = from;
+      this.to = to;
+    }
+
+    @Override
+    protected void compute() {
+      if (to - from <= GRAIN) {
+        for (int i = from; i < to; i++)
+          finals[i] = evaluate(chromosomes.get(i), inputs == null ? null : inputs.get(i),
+                               syncLengths[i], initialise);
+        return;
+      }
+
+      int mid = (from + to) >>> 1;
+      invokeAll(new Evaluation(chromosomes, inputs, syncLengths, initialise, finals, from, mid),
+                new Evaluation(chromosomes, inputs, syncLengths, initialise, finals, mid, to));
+    }
+  }
+}
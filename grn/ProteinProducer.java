@@ -10,18 +10,8 @@ public class ProteinProducer {
   /** */
   private static double scalingFactor = 1.0;
 
-  /** */
-  private static double delta = 1.0;
-
-  /** */
-  private static double phi(double d) {
-    return 0.0;
-  }
-
   private static HashMap<Integer, Integer> compBitsMap = new HashMap<Integer, Integer>();
 
-  public static int[][][] cbits;
-
   static {
     exp = new double[33];
     for (int i = 0; i < 33; i++)
@@ -59,23 +49,6 @@ public class ProteinProducer {
     return proteins;
   }
 
-  /**
-   *
-   *
-   * @param g
-   * @param p
-   * @param proteins
-   * @return production delta
-   */
-  public static double produce(Gene g, Protein p, Protein[] proteins, int umax) {
-    return (delta * (enhancerSignal(g, proteins, umax) - inhibitorSignal(g, proteins, umax)) * p.concentration - phi(1.0));
-  }
-
-  public static double p_produce(Gene g, Protein p, Protein[] proteins, int umax) {
-    return (delta * (enhancerSignal(g, proteins, umax) - inhibitorSignal(g, proteins, umax)) - phi(1.0));
-  }
-
-
   /**
    *
    *
@@ -83,75 +56,63 @@ public class ProteinProducer {
    * @param
    * @return
    */
-  private static double enhancerSignal(Gene g, Protein[] proteins, int umax) {
-    return regulatorySignal(g.enhancer, proteins, umax, g.index, 0);
+  private static int countComplementaryBits(int r, Protein p) {
+    return countComplementaryBits(r, p.value);
   }
 
   /**
+   * Count the complementary bits between a regulatory site and a
+   * protein signature.
    *
-   *
-   * @param
-   * @param
-   * @return
+   * @param r regulatory site value
+   * @param signature protein signature
+   * @return number of complementary bits, [0,32]
    */
-  private static double inhibitorSignal(Gene g, Protein[] proteins, int umax) {
-    return regulatorySignal(g.inhibitor, proteins, umax, g.index, 1);
+  public static int countComplementaryBits(int r, int signature) {
+    int v = r ^ signature;
+    v = v - ((v >>> 1) & 0x55555555);
+    v = (v & 0x33333333) + ((v >>> 2) & 0x33333333);
+    return ((v + (v >>> 4) & 0xF0F0F0F) * 0x1010101) >>> 24;
   }
 
   /**
+   * The greatest match between either of a gene's regulatory sites
+   * and the first n protein signatures.
    *
-   *
-   * @param
-   * @param
-   * @return
+   * @param g the gene
+   * @param signatures protein signatures
+   * @param n number of signatures to consider
+   * @return the greatest complementary bit count, or -1 if n is 0
    */
-  private static double regulatorySignal(int r, Protein[] proteins, int umax, int index, int type) {
-    double signal = 0.0;
-
-    // int[] cbits = new int[proteins.length];
-    // for (int i = 0; i < proteins.length; i++) {
-    //   cbits[i] = countComplementaryBits(r, proteins[i]);
-    // }
-
-    for (int i = 0; i < proteins.length; i++) {
-
-       int compMeasure;
-       if (cbits[type][index][i] == -1) {
-         compMeasure = umax - countComplementaryBits(r, proteins[i]);
-         cbits[type][index][i] = compMeasure;
-       }
-       else
-         compMeasure = cbits[type][index][i];
-
-       signal += proteins[i].concentration * exp[compMeasure];
-       //signal += proteins[i].concentration * exp[umax-cbits[i]];//Math.exp(scalingFactor * (cbits[i] - max_cbits));
+  public static int calculateUMax(Gene g, int[] signatures, int n) {
+    int max_cbits = -1, temp;
+    for (int i = 0; i < n; i++) {
+      temp = countComplementaryBits(g.enhancer, signatures[i]);
+      if(temp > max_cbits)
+        max_cbits = temp;
+      temp = countComplementaryBits(g.inhibitor, signatures[i]);
+      if(temp > max_cbits)
+        max_cbits = temp;
     }
-
-    if (proteins.length == 0)
-      return 0.0;
-
-    return signal/(double)proteins.length;
+    return max_cbits;
   }
 
   /**
+   * Populate a gene's rows of the lookup table with
+   * umax - complementaryBitCount against the first n signatures.
    *
-   *
-   * @param
-   * @param
-   * @return
+   * @param g the gene
+   * @param signatures protein signatures
+   * @param n number of signatures to consider
+   * @param umax the greatest match in the network
+   * @param enhancerRow the gene's enhancer row of the table
+   * @param inhibitorRow the gene's inhibitor row of the table
    */
-  private static int countComplementaryBits(int r, Protein p) {
-
-    int c = 0;
-    int v = r ^ p.value;
-    // while (v != 0) {
-    //   c++;
-    //   v &= v - 1;
-    // }
-    v = v - ((v >>> 1) & 0x55555555);                    // reuse input as temporary
-    v = (v & 0x33333333) + ((v >>> 2) & 0x33333333);     // temp
-    c = ((v + (v >>> 4) & 0xF0F0F0F) * 0x1010101) >>> 24; // count
-    return c;
+  public static void matchRows(Gene g, int[] signatures, int n, int umax, int[] enhancerRow, int[] inhibitorRow) {
+    for (int i = 0; i < n; i++) {
+      enhancerRow[i] = umax - countComplementaryBits(g.enhancer, signatures[i]);
+      inhibitorRow[i] = umax - countComplementaryBits(g.inhibitor, signatures[i]);
+    }
   }
 
   public static int calculateUMax(Gene g, Protein[] proteins) {
@@ -0,0 +1,188 @@
+package grn;
+
+/**
+ * Structure-of-arrays view of a network's proteins. Concentrations
+ * and signatures are held in contiguous primitive arrays using the
+ * same layout as a row of Grn.results:
+ * TF proteins, input TF proteins, P proteins.
+ *
+ * The simulation runs directly against these arrays; Protein objects
+ * are only read from or written to at the edges of the public API.
+ */
+public class ProteinState {
+
+  /** Number of (non-input) TF proteins */
+  public final int nTf;
+
+  /** Number of input TF proteins */
+  public final int nInputs;
+
+  /** Number of P proteins */
+  public final int nP;
+
+  /** Protein concentrations: TF, input, P */
+  public final double[] concentrations;
+
+  /** Protein signatures: TF, input, P */
+  public final int[] signatures;
+
+  /** Sum total of input TF protein concentrations */
+  public double inputConcentration;
+
+  /**
+   * Creates an empty state.
+   *
+   * @param nTf number of TF proteins, excluding inputs
+   * @param nInputs number of input TF proteins
+   * @param nP number of P proteins
+   */
+  public ProteinState(int nTf, int nInputs, int nP) {
+    this(nTf, nInputs, nP, new double[nTf + nInputs + nP], new int[nTf + nInputs + nP]);
+  }
+
+  /**
+   * Creates a state over existing arrays, e.g. signatures shared by
+   * every simulation of a network.
+   *
+   * @param nTf number of TF proteins, excluding inputs
+   * @param nInputs number of input TF proteins
+   * @param nP number of P proteins
+   * @param concentrations protein concentrations: TF, input, P
+   * @param signatures protein signatures: TF, input, P
+   */
+  ProteinState(int nTf, int nInputs, int nP, double[] concentrations, int[] signatures) {
+    this.nTf = nTf;
+    this.nInputs = nInputs;
+    this.nP = nP;
+    this.concentrations = concentrations;
+    this.signatures = signatures;
+  }
+
+  /**
+   * Creates a state holding copies of the given proteins.
+   *
+   * @param tfProteins TF proteins, input proteins last
+   * @param numberOfInputs number of input proteins at the end of tfProteins
+   * @param pProteins P proteins
+   * @return a new state
+   */
+  public static ProteinState of(Protein[] tfProteins, int numberOfInputs, Protein[] pProteins) {
+    ProteinState s = new ProteinState(tfProteins.length - numberOfInputs, numberOfInputs, pProteins.length);
+    s.gather(tfProteins, pProteins);
+    return s;
+  }
+
+  /**
+   * @return the number of TF proteins including inputs, i.e. the
+   * number of columns of the interaction table
+   */
+  public int tfLength() {
+    return nTf + nInputs;
+  }
+
+  /**
+   * @return index of the first P protein
+   */
+  public int pOffset() {
+    return nTf + nInputs;
+  }
+
+  /**
+   * Check whether this state has the shape of the given protein sets.
+   */
+  public boolean fits(Protein[] tfProteins, int numberOfInputs, Protein[] pProteins) {
+    return nInputs == numberOfInputs
+      && nTf == tfProteins.length - numberOfInputs
+      && nP == pProteins.length;
+  }
+
+  /**
+   * Copy concentrations, signatures and the input total from the
+   * protein objects. The protein arrays must fit this state.
+   */
+  public void gather(Protein[] tfProteins, Protein[] pProteins) {
+    int n = tfLength();
+    inputConcentration = 0.0;
+    for (int i = 0; i < n; i++) {
+      concentrations[i] = tfProteins[i].concentration;
+      signatures[i] = tfProteins[i].value;
+      if (i >= nTf)
+        inputConcentration += tfProteins[i].concentration;
+    }
+    for (int i = 0; i < nP; i++) {
+      concentrations[n + i] = pProteins[i].concentration;
+      signatures[n + i] = pProteins[i].value;
+    }
+  }
+
+  /**
+   * Write the TF and P concentrations back into the protein objects.
+   * Input proteins belong to the caller and are left untouched.
+   */
+  public void scatter(Protein[] tfProteins, Protein[] pProteins) {
+    for (int i = 0; i < nTf; i++)
+      tfProteins[i].concentration = concentrations[i];
+    for (int i = 0; i < nP; i++)
+      pProteins[i].concentration = concentrations[pOffset() + i];
+  }
+
+  /**
+   * Normalises the TF protein concentrations so the sum total is
+   * 1.0 - inputConcentration. Input TF proteins are not affected.
+   */
+  public void normaliseTF() {
+    double total = 0;
+    for (int i = 0; i < nTf; i++)
+      total += concentrations[i];
+
+    if (total > 0.0)
+      for (int i = 0; i < nTf; i++) {
+        concentrations[i] *= 1.0 - inputConcentration;
+        concentrations[i] /= total;
+      }
+  }
+
+  /**
+   * Replace the input concentrations, renormalising the TF proteins
+   * around the new input total as Grn.injectInputs() does. Nothing is
+   * changed if the concentrations are those already held.
+   *
+   * @param inputs concentrations of the input proteins, in state order
+   * @return whether the concentrations changed
+   */
+  public boolean applyInputs(double[] inputs) {
+    boolean changed = false;
+    for (int k = 0; k < nInputs; k++)
+      changed |= concentrations[nTf + k] != inputs[k];
+    if (!changed)
+      return false;
+
+    inputConcentration = 0.0;
+    for (int k = 0; k < nInputs; k++) {
+      concentrations[nTf + k] = inputs[k];
+      inputConcentration += inputs[k];
+    }
+    normaliseTF();
+    return true;
+  }
+
+  /**
+   * @return new Protein objects for the TF proteins, inputs last
+   */
+  public Protein[] materialiseTFProteins() {
+    Protein[] proteins = new Protein[tfLength()];
+    for (int i = 0; i < proteins.length; i++)
+      proteins[i] = new Protein(concentrations[i], signatures[i]);
+    return proteins;
+  }
+
+  /**
+   * @return new Protein objects for the P proteins
+   */
+  public Protein[] materialisePProteins() {
+    Protein[] proteins = new Protein[nP];
+    for (int i = 0; i < nP; i++)
+      proteins[i] = new Protein(concentrations[pOffset() + i], signatures[pOffset() + i]);
+    return proteins;
+  }
+}
@@ -0,0 +1,179 @@
+package grn;
+
+import grn.metrics.Metrics;
+import grn.sink.TrajectorySink;
+
+/**
+ * The mutable state of one simulation of a compiled network: protein
+ * concentrations and the input total. Forking a state copies only its
+ * concentration vector, so a single network can drive many
+ * independent simulations, e.g. under different inputs or
+ * perturbations.
+ *
+ * A state is stepped with its own kernel, created on first use, and
+ * must not be shared between threads; its forks may be run on any.
+ */
+public class SimulationState {
+
+  /** The network being simulated */
+  public final CompiledNetwork network;
+
+  /** Protein concentrations and the input total, over the network's signatures */
+  private final ProteinState state;
+
+  /** Step kernel over the network's weights, null until first stepped */
+  private StepKernel kernel;
+
+  SimulationState(CompiledNetwork network, double[] concentrations, double inputConcentration) {
+    this.network = network;
+    state = new ProteinState(network.nTf, network.nInputs, network.nP, concentrations, network.signatures);
+    state.inputConcentration = inputConcentration;
+  }
+
+  /**
+   * @return an independent copy of this state
+   */
+  public SimulationState fork() {
+    return new SimulationState(network, state.concentrations.clone(), state.inputConcentration);
+  }
+
+  /**
+   * Advance the simulation one time step.
+   */
+  public void step() {
+    if (kernel == null)
+      kernel = network.newKernel();
+    kernel.step(state.concentrations, state.inputConcentration);
+  }
+
+  /**
+   * Advance the simulation a number of time steps without recording.
+   *
+   * @param timeSteps the number of time steps
+   */
+  public void step(int timeSteps) {
+    for (int t = 0; t < timeSteps; t++)
+      step();
+  }
+
+  /**
+   * Iterate the simulation, as Grn.run().
+   *
+   * @param timeSteps the length of the synchronisation step
+   * @param sink receives the state at each time step
+   * @return the time step of the final state
+   */
+  public int run(int timeSteps, TrajectorySink sink) {
+    return run(timeSteps, false, null, sink);
+  }
+
+  /**
+   * Iterate the simulation while its input concentrations follow a
+   * schedule, as Grn.run() does.
+   *
+   * @param timeSteps the length of the synchronisation step
+   * @param schedule the input concentrations at each time step
+   * @param sink receives the state at each time step
+   * @return the time step of the final state
+   */
+  public int run(int timeSteps, InputSchedule schedule, TrajectorySink sink) {
+    return run(timeSteps, false, schedule, sink);
+  }
+
+  /**
+   * Run until at rest or for Grn.INIT_PERIOD time steps, as Grn.init().
+   *
+   * @param sink receives the state at each time step
+   * @return the time step at which the simulation came to rest, or INIT_PERIOD
+   */
+  public int init(TrajectorySink sink) {
+    return run(Grn.INIT_PERIOD, true, null, sink);
+  }
+
+  private int run(int timeSteps, boolean initialising, InputSchedule schedule, TrajectorySink sink) {
+    double[] c = state.concentrations;
+    int window = Grn.REST_STEP + 1;
+    double[][] recent = initialising ? new double[window][c.length] : null;
+    double[] inputs = schedule == null ? null : getInputs();
+
+    sink.begin(network.nTf, network.nInputs, network.nP, timeSteps);
+    long start = Grn.startTimer();
+
+    int t;
+    for (t = 0; t < timeSteps && (initialising ? !Grn.atRest(recent, t - 1, c.length) : true); t++) {
+      if (schedule != null) {
+        schedule.inputsAt(t, inputs);
+        state.applyInputs(inputs);
+      }
+      sink.record(t, c);
+      if (initialising)
+        System.arraycopy(c, 0, recent[t % window], 0, c.length);
+      step();
+    }
+
+    Metrics metrics = Grn.getMetrics();
+    if (start != 0 && metrics != Metrics.NONE)
+      metrics.ran(network.nTf + network.nP, c.length, t, initialising, initialising && t < timeSteps,
+                  System.nanoTime() - start);
+
+    sink.record(t, c);
+    sink.end(t);
+    return t;
+  }
+
+  /**
+   * Replace the input concentrations, renormalising the TF proteins
+   * around the new input total as Grn.injectInputs() does. Nothing is
+   * changed if the concentrations are those already held.
+   *
+   * @param inputs concentrations of the input proteins, in the order
+   * they appear in the network's TF proteins
+   */
+  public void setInputs(double[] inputs) {
+    state.applyInputs(inputs);
+  }
+
+  /**
+   * @return a copy of the input concentrations
+   */
+  public double[] getInputs() {
+    double[] inputs = new double[network.nInputs];
+    System.arraycopy(state.concentrations, network.nTf, inputs, 0, inputs.length);
+    return inputs;
+  }
+
+  /**
+   * @return sum total of input TF protein concentrations
+   */
+  public double getInputConcentration() {
+    return state.inputConcentration;
+  }
+
+  /**
+   * @param protein index of a protein, laid out as a row of Grn.results
+   * @return its concentration
+   */
+  public double getConcentration(int protein) {
+    return state.concentrations[protein];
+  }
+
+  /**
+   * Set the concentration of a single protein, e.g. to perturb the
+   * simulation. Other concentrations are not renormalised.
+   *
+   * @param protein index of a protein, laid out as a row of Grn.results
+   * @param concentration its new concentration
+   */
+  public void setConcentration(int protein, double concentration) {
+    if (protein >= network.nTf && protein < network.tfLength())
+      throw new IllegalArgumentException("Protein "+protein+" is an input, use setInputs()");
+    state.concentrations[protein] = concentration;
+  }
+
+  /**
+   * @return a copy of the concentrations, laid out as a row of Grn.results
+   */
+  public double[] getConcentrations() {
+    return state.concentrations.clone();
+  }
+}
@@ -0,0 +1,205 @@
+package grn;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * The simulation state of a network at one moment: every protein's
+ * concentration, the input proteins and the time step at which its
+ * last init() came to rest. Taken with Grn.snapshot() and put back
+ * with Grn.restore(), so a network can skip init() when its steady
+ * state is already known.
+ *
+ * A snapshot identifies its network by a fingerprint of the gene
+ * encoding rather than holding the encoding itself. It serialises to
+ * a compact binary form, little endian:
+ *
+ *   int    MAGIC
+ *   int    VERSION
+ *   long   fingerprint of the gene encoding
+ *   int    number of TF proteins, excluding inputs
+ *   int    number of input proteins
+ *   int    number of P proteins
+ *   int    rest step
+ *   int    signature of each input protein
+ *   double concentrations: TF, input, P
+ */
+public class Snapshot {
+
+  /** "GRNS" */
+  public static final int MAGIC = 0x47524E53;
+
+  /** Format version */
+  public static final int VERSION = 1;
+
+  /** Bytes before the input signatures */
+  private static final int HEADER_SIZE = 32;
+
+  /** Fingerprint of the network's gene encoding */
+  public final long fingerprint;
+
+  /** Number of TF proteins, excluding inputs */
+  public final int nTf;
+
+  /** Number of input proteins */
+  public final int nInputs;
+
+  /** Number of P proteins */
+  public final int nP;
+
+  /**
+   * The time step at which the last init() or SteadyStateSolver came to
+   * rest, INIT_PERIOD if it did not, or -1 if the network was not
+   * initialised
+   */
+  public final int restStep;
+
+  /** Signatures of the input proteins */
+  final int[] inputSignatures;
+
+  /** Concentrations: TF, input, P */
+  final double[] concentrations;
+
+  Snapshot(long fingerprint, int nTf, int nInputs, int nP, int restStep, int[] inputSignatures,
+           double[] concentrations) {
+    this.fingerprint = fingerprint;
+    this.nTf = nTf;
+    this.nInputs = nInputs;
+    this.nP = nP;
+    this.restStep = restStep;
+    this.inputSignatures = inputSignatures;
+    this.concentrations = concentrations;
+  }
+
+  /**
+   * @return the concentrations, laid out as a row of Grn.results
+   */
+  public double[] getConcentrations() {
+    return concentrations.clone();
+  }
+
+  /**
+   * @return the signatures of the input proteins
+   */
+  public int[] getInputSignatures() {
+    return inputSignatures.clone();
+  }
+
+  /**
+   * @return the concentrations of the input proteins
+   */
+  public double[] getInputConcentrations() {
+    return Arrays.copyOfRange(concentrations, nTf, nTf + nInputs);
+  }
+
+  /**
+   * @return new input proteins with the snapshot's signatures and concentrations
+   */
+  public ArrayList<Protein> getInputProteins() {
+    ArrayList<Protein> inputs = new ArrayList<Protein>();
+    for (int k = 0; k < nInputs; k++)
+      inputs.add(new Protein(concentrations[nTf + k], inputSignatures[k]));
+    return inputs;
+  }
+
+  /**
+   * @return the size of the binary form
+   */
+  public int size() {
+    return HEADER_SIZE + nInputs * 4 + concentrations.length * 8;
+  }
+
+  /**
+   * @return the binary form
+   */
+  public byte[] toBytes() {
+    ByteBuffer buffer = ByteBuffer.allocate(size()).order(ByteOrder.LITTLE_ENDIAN);
+    buffer.putInt(MAGIC).putInt(VERSION).putLong(fingerprint)
+      .putInt(nTf).putInt(nInputs).putInt(nP).putInt(restStep);
+    for (int signature : inputSignatures)
+      buffer.putInt(signature);
+    for (double c : concentrations)
+      buffer.putDouble(c);
+    return buffer.array();
+  }
+
+  /**
+   * Read a snapshot from its binary form.
+   *
+   * @param bytes the binary form, as returned by toBytes()
+   * @return the snapshot
+   * @throws IllegalArgumentException if bytes do not hold a snapshot
+   */
+  public static Snapshot fromBytes(byte[] bytes) {
+    ByteBuffer buffer = ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN);
+    if (bytes.length < HEADER_SIZE || buffer.getInt() != MAGIC || buffer.getInt() != VERSION)
+      throw new IllegalArgumentException("Not a version "+VERSION+" snapshot");
+    long fingerprint = buffer.getLong();
+    int nTf = buffer.getInt();
+    int nInputs = buffer.getInt();
+    int nP = buffer.getInt();
+    int restStep = buffer.getInt();
+    if (nTf < 0 || nInputs < 0 || nP < 0
+        || bytes.length != HEADER_SIZE + nInputs * 4L + (nTf + (long)nInputs + nP) * 8)
+      throw new IllegalArgumentException("Snapshot of "+nTf+" TF, "+nInputs+" input and "+nP
+                                         +" P proteins in "+bytes.length+" bytes");
+
+    int[] inputSignatures = new int[nInputs];
+    for (int k = 0; k < nInputs; k++)
+      inputSignatures[k] = buffer.getInt();
+    double[] concentrations = new double[nTf + nInputs + nP];
+    for (int i = 0; i < concentrations.length; i++)
+      concentrations[i] = buffer.getDouble();
+    return new Snapshot(fingerprint, nTf, nInputs, nP, restStep, inputSignatures, concentrations);
+  }
+
+  /**
+   * A 64 bit fingerprint of a gene encoding, as identifies a network
+   * in its snapshots.
+   *
+   * @param encoding a gene encoding, as Grn.getGRNEncoding()
+   * @return its fingerprint
+   */
+  public static long fingerprint(int[] encoding) {
+    long h = mix(encoding.length);
+    for (int codon : encoding)
+      h = mix(h ^ (codon & 0xFFFFFFFFL));
+    return h;
+  }
+
+  /**
+   * @return key(fingerprint, input signatures, input concentrations)
+   */
+  public long key() {
+    return key(fingerprint, inputSignatures, getInputConcentrations());
+  }
+
+  /**
+   * A 64 bit hash of a network and its inputs, as the steady state
+   * depends on both.
+   *
+   * @param fingerprint fingerprint of the network's gene encoding
+   * @param inputSignatures signatures of the input proteins
+   * @param inputConcentrations concentrations of the input proteins
+   * @return the key
+   */
+  public static long key(long fingerprint, int[] inputSignatures, double[] inputConcentrations) {
+    long h = fingerprint;
+    for (int k = 0; k < inputSignatures.length; k++) {
+      h = mix(h ^ (inputSignatures[k] & 0xFFFFFFFFL));
+      h = mix(h ^ Double.doubleToLongBits(inputConcentrations[k]));
+    }
+    return h;
+  }
+
+  /**
+   * Scramble the bits of a hash, as the SplitMix64 finaliser.
+   */
+  private static long mix(long h) {
+    h = (h ^ (h >>> 30)) * 0xBF58476D1CE4E5B9L;
+    h = (h ^ (h >>> 27)) * 0x94D049BB133111EBL;
+    return h ^ (h >>> 31);
+  }
+}
@@ -0,0 +1,190 @@
+package grn;
+
+/**
+ * A StepKernel that drops negligible weights and runs the regulatory
+ * signal as a sparse matrix-vector product over the rest, stored in
+ * compressed sparse row (CSR) form.
+ *
+ * A weight is dropped when its magnitude is at most the tolerance.
+ * Weights where a protein matches a gene's enhancer and inhibitor
+ * equally are exactly 0 and are always dropped; typically 10-15% of a
+ * random network's. Beyond those, exp[] only falls below 1e-8 more
+ * than 18 bits under umax, which is rare, so tolerances of Grn.ZERO
+ * keep almost everything else and the kernel only pays off at
+ * tolerances around 1e-6 and above.
+ *
+ * As the TF concentrations sum to at most 1, the dropped weights
+ * change a gene's regulatory signal by at most the largest weight
+ * dropped from its row, over the number of TF proteins, per step:
+ * getErrorBound(). measureError() gives the actual difference from
+ * the dense kernel for a given state.
+ *
+ * Only the compressed rows are kept, not the dense weights; if those
+ * are rewritten in place weightsChanged() must be called. Kernels from
+ * share() share the compressed rows.
+ */
+public class SparseStepKernel extends StepKernel {
+
+  /** Tolerance used by StepKernel.create() unless another is given */
+  public static final double DEFAULT_TOLERANCE = Grn.ZERO;
+
+  /** Weights no larger than this in magnitude are dropped */
+  public final double tolerance;
+
+  /** Start of each gene row in columns and values, then their length */
+  private int[] rowStart;
+
+  /** TF protein index of each kept weight */
+  private int[] columns;
+
+  /** The kept weights, row by row */
+  private double[] values;
+
+  /** Largest per-step error of any regulatory signal */
+  private double errorBound;
+
+  /**
+   * Creates a kernel over an already compiled weight matrix.
+   *
+   * @param weights row-major genes x TF proteins weights
+   * @param nTfGenes number of TF genes
+   * @param nPGenes number of P genes
+   * @param nTfProteins number of TF proteins, including inputs
+   * @param tolerance weights no larger than this in magnitude are dropped
+   */
+  public SparseStepKernel(double[] weights, int nTfGenes, int nPGenes, int nTfProteins, double tolerance) {
+    super((double[])null, nTfGenes, nPGenes, nTfProteins);
+    if (!(tolerance >= 0))
+      throw new IllegalArgumentException("Tolerance must not be negative: "+tolerance);
+    this.tolerance = tolerance;
+    compress(weights);
+  }
+
+  /**
+   * Creates a kernel sharing another's compressed rows.
+   *
+   * @param other the kernel to share
+   */
+  protected SparseStepKernel(SparseStepKernel other) {
+    super((double[])null, other.nTfGenes, other.nPGenes, other.nTfProteins);
+    tolerance = other.tolerance;
+    rowStart = other.rowStart;
+    columns = other.columns;
+    values = other.values;
+    errorBound = other.errorBound;
+  }
+
+  @Override
+  public Engine engine() {
+    return Engine.SPARSE;
+  }
+
+  @Override
+  public StepKernel share() {
+    return new SparseStepKernel(this);
+  }
+
+  @Override
+  public void weightsChanged(double[] weights) {
+    compress(weights);
+  }
+
+  /**
+   * Rebuild the compressed rows from the dense weights, into new
+   * arrays as they may be shared.
+   */
+  private void compress(double[] weights) {
+    int rows = nTfGenes + nPGenes;
+    int n = nTfProteins;
+    int kept = 0;
+    for (int k = 0; k < rows * n; k++)
+      if (Math.abs(weights[k]) > tolerance)
+        kept++;
+
+    rowStart = new int[rows + 1];
+    columns = new int[kept];
+    values = new double[kept];
+    double worst = 0.0;
+    int k = 0;
+    for (int g = 0; g < rows; g++) {
+      rowStart[g] = k;
+      int row = g * n;
+      for (int j = 0; j < n; j++) {
+        double w = weights[row + j];
+        if (Math.abs(w) > tolerance) {
+          columns[k] = j;
+          values[k++] = w;
+        }
+        else {
+          worst = Math.max(worst, Math.abs(w));
+        }
+      }
+    }
+    rowStart[rows] = k;
+    errorBound = n == 0 ? 0.0 : worst / n;
+  }
+
+  @Override
+  protected void regulate(double[] c, int rows) {
+    int n = nTfProteins;
+    if (n == 0) {
+      for (int g = 0; g < rows; g++)
+        signals[g] = 0.0;
+      return;
+    }
+
+    for (int g = 0; g < rows; g++) {
+      double signal = 0.0;
+      for (int k = rowStart[g]; k < rowStart[g + 1]; k++)
+        signal += values[k] * c[columns[k]];
+      signals[g] = signal / (double)n;
+    }
+  }
+
+  /**
+   * @return number of weights kept
+   */
+  public int getNonZeros() {
+    return values.length;
+  }
+
+  /**
+   * @return fraction of the weights kept
+   */
+  public double getDensity() {
+    int size = (nTfGenes + nPGenes) * nTfProteins;
+    return size == 0 ? 1.0 : (double)values.length / size;
+  }
+
+  /**
+   * @return the largest change the dropped weights can make to any
+   * gene's regulatory signal in one step, while the TF concentrations
+   * sum to at most 1
+   */
+  public double getErrorBound() {
+    return errorBound;
+  }
+
+  /**
+   * Measure how far the regulatory signals of a state are from the
+   * dense kernel's.
+   *
+   * @param weights the dense weights this kernel was compressed from, as Grn.weights
+   * @param c concentrations: TF proteins, input TF proteins, P proteins
+   * @return the largest difference of any gene's regulatory signal
+   */
+  public double measureError(double[] weights, double[] c) {
+    int n = nTfProteins;
+    int rows = nTfGenes + Math.min(nPGenes, c.length - n);
+    double worst = 0.0;
+    for (int g = 0; g < rows; g++) {
+      int row = g * n;
+      double dropped = 0.0;
+      for (int j = 0; j < n; j++)
+        if (Math.abs(weights[row + j]) <= tolerance)
+          dropped += weights[row + j] * c[j];
+      worst = Math.max(worst, Math.abs(dropped) / n);
+    }
+    return worst;
+  }
+}
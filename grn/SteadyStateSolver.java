@@ -0,0 +1,373 @@
+package grn;
+
+import java.util.Arrays;
+
+import grn.metrics.Metrics;
+
+/**
+ * Finds a network's steady state faster than the INIT_PERIOD step
+ * loop of Grn.init().
+ *
+ * The network is iterated exactly as init() does, checking for rest
+ * over the same REST_STEP window. Once the largest per-step change
+ * falls below a switch tolerance the trajectory is taken to be in the
+ * basin of its steady state, and the fixed point of the time step map
+ * is found with Anderson acceleration: each iterate mixes the last few
+ * evaluations of the map, weighted to minimise the residual
+ * F(x) - x, and is projected back onto non-negative, normalised
+ * concentrations. Starting acceleration from the initial state
+ * instead tends to land on one of the many other fixed points where
+ * different TF proteins have died out.
+ *
+ * An accelerated fixed point is only accepted if it passes init()'s
+ * own test: over REST_STEP plain steps no concentration moves by more
+ * than REST_EPSILON. Otherwise the state from before the attempt is
+ * restored and plain iteration carries on, trying again with a ten
+ * times smaller switch tolerance. A failed solve therefore ends in the
+ * same state as init(), at the cost of the failed attempts.
+ */
+public class SteadyStateSolver {
+
+  /** How a steady state was reached */
+  public enum Method {
+    /** Anderson acceleration converged to a stable fixed point */
+    ANDERSON,
+    /** Plain iteration came to rest */
+    PLAIN,
+    /** Plain iteration ran for INIT_PERIOD steps without coming to rest */
+    NOT_CONVERGED
+  }
+
+  /** The outcome of a solve */
+  public static class Result {
+
+    /** How the final state was reached */
+    public final Method method;
+
+    /** Total number of time steps evaluated */
+    public final int iterations;
+
+    /** Number of those spent in acceleration, successful or not */
+    public final int acceleratedIterations;
+
+    /** Number of acceleration attempts made */
+    public final int attempts;
+
+    /** Largest per-step change of any concentration in the final state */
+    public final double residual;
+
+    Result(Method method, int iterations, int acceleratedIterations, int attempts, double residual) {
+      this.method = method;
+      this.iterations = iterations;
+      this.acceleratedIterations = acceleratedIterations;
+      this.attempts = attempts;
+      this.residual = residual;
+    }
+
+    /**
+     * @return whether the network reached a steady state
+     */
+    public boolean converged() {
+      return method != Method.NOT_CONVERGED;
+    }
+
+    public String toString() {
+      return method+" after "+iterations+" steps ("+acceleratedIterations+" accelerated in "
+        +attempts+" attempts), residual "+residual;
+    }
+  }
+
+  /** Number of previous iterates mixed */
+  private final int depth;
+
+  /** Limit on iterations per acceleration attempt */
+  private final int maxIterations;
+
+  /** Limit on acceleration attempts per solve */
+  private final int maxAttempts;
+
+  /** Per-step change at which acceleration is first attempted */
+  private final double switchTolerance;
+
+  /** Residual at which acceleration is considered converged */
+  private final double tolerance;
+
+  /**
+   * Creates a solver mixing 5 iterates, making at most 3 attempts of at
+   * most 200 iterations, switching to acceleration once the per-step
+   * change is below 1e-5 and accepting a residual of REST_EPSILON / 10.
+   */
+  public SteadyStateSolver() {
+    this(5, 200, 3, 1e-5, Grn.REST_EPSILON / 10);
+  }
+
+  /**
+   * @param depth number of previous iterates mixed, at least 1
+   * @param maxIterations limit on iterations per acceleration attempt
+   * @param maxAttempts limit on acceleration attempts per solve
+   * @param switchTolerance per-step change at which acceleration is first attempted
+   * @param tolerance largest per-step change accepted as converged
+   */
+  public SteadyStateSolver(int depth, int maxIterations, int maxAttempts,
+                           double switchTolerance, double tolerance) {
+    if (depth < 1)
+      throw new IllegalArgumentException("Mixing depth must be positive: "+depth);
+    this.depth = depth;
+    this.maxIterations = maxIterations;
+    this.maxAttempts = maxAttempts;
+    this.switchTolerance = switchTolerance;
+    this.tolerance = tolerance;
+  }
+
+  /**
+   * Bring the network to its steady state. On return the network's
+   * proteins hold the final concentrations and its rest step is the
+   * number of time steps evaluated, as after init(); initResults is
+   * not filled.
+   *
+   * @param grn the network to initialise
+   * @return how the state was reached
+   */
+  public Result solve(Grn grn) {
+    long start = Grn.startTimer();
+    grn.syncState();
+    StepKernel kernel = grn.kernel;
+    ProteinState state = grn.state;
+    double[] c = state.concentrations;
+    int n = c.length;
+
+    int window = Grn.REST_STEP + 1;
+    double[][] recent = new double[window][n];
+    double[] snapshot = new double[n];
+    double threshold = switchTolerance;
+    int accelerated = 0, attempts = 0;
+
+    int t;
+    for (t = 0; t < Grn.INIT_PERIOD && !Grn.atRest(recent, t - 1, n); t++) {
+      System.arraycopy(c, 0, recent[t % window], 0, n);
+      kernel.step(c, state.inputConcentration);
+
+      /* Close enough to try jumping straight to the fixed point */
+      if (attempts < maxAttempts && change(c, recent[t % window]) <= threshold) {
+        attempts++;
+        System.arraycopy(c, 0, snapshot, 0, n);
+        int mixed = accelerate(kernel, state);
+        accelerated += mixed < 0 ? maxIterations : mixed;
+        if (mixed >= 0) {
+          accelerated += Grn.REST_STEP;
+          if (settle(kernel, state)) {
+            state.scatter(grn.tfProteins, grn.pProteins);
+            return report(grn, start, new Result(Method.ANDERSON, t + 1 + accelerated, accelerated, attempts,
+                                                 residual(kernel, state)));
+          }
+        }
+        System.arraycopy(snapshot, 0, c, 0, n);
+        threshold /= 10;
+      }
+    }
+
+    state.scatter(grn.tfProteins, grn.pProteins);
+    return report(grn, start, new Result(t < Grn.INIT_PERIOD ? Method.PLAIN : Method.NOT_CONVERGED,
+                                         t + accelerated, accelerated, attempts, residual(kernel, state)));
+  }
+
+  /**
+   * Record a solve's rest step on the network, as init() does, and
+   * report it to the metrics as an initialising run.
+   */
+  private static Result report(Grn grn, long start, Result result) {
+    grn.setRestStep(result.converged() ? result.iterations : Grn.INIT_PERIOD);
+    Metrics metrics = Grn.getMetrics();
+    if (start != 0 && metrics != Metrics.NONE)
+      metrics.ran(grn.tfGenes.length + grn.pGenes.length, grn.state.concentrations.length, result.iterations,
+                  true, result.converged(), System.nanoTime() - start);
+    return result;
+  }
+
+  /**
+   * @return the largest absolute difference between two states
+   */
+  private static double change(double[] a, double[] b) {
+    double max = 0;
+    for (int i = 0; i < a.length; i++)
+      max = Math.max(max, Math.abs(a[i] - b[i]));
+    return max;
+  }
+
+  /**
+   * Run Anderson acceleration on the state in place.
+   *
+   * @return the number of iterations taken, or -1 if it failed to converge
+   */
+  private int accelerate(StepKernel kernel, ProteinState state) {
+    double[] x = state.concentrations;
+    int n = x.length;
+    double input = state.inputConcentration;
+
+    double[][] dF = new double[depth][n];
+    double[][] dG = new double[depth][n];
+    double[] g = new double[n], f = new double[n];
+    double[] gPrev = new double[n], fPrev = new double[n];
+    double[][] a = new double[depth][depth];
+    double[] b = new double[depth];
+
+    evaluate(kernel, x, input, g, f);
+    for (int k = 0; k < maxIterations; k++) {
+      double res = maxAbs(f);
+      if (Double.isNaN(res) || Double.isInfinite(res))
+        return -1;
+      if (res <= tolerance) {
+        System.arraycopy(g, 0, x, 0, n);
+        return k + 1;
+      }
+
+      /* Record the differences of the latest pair of evaluations */
+      if (k > 0) {
+        int slot = (k - 1) % depth;
+        for (int i = 0; i < n; i++) {
+          dF[slot][i] = f[i] - fPrev[i];
+          dG[slot][i] = g[i] - gPrev[i];
+        }
+      }
+      int m = Math.min(k, depth);
+
+      /* Mix: x = g - sum gamma_j dG_j, gamma minimising |f - dF gamma| */
+      System.arraycopy(g, 0, x, 0, n);
+      if (m > 0 && leastSquares(dF, f, m, a, b))
+        for (int j = 0; j < m; j++)
+          for (int i = 0; i < n; i++)
+            x[i] -= b[j] * dG[j][i];
+      project(x, state);
+
+      double[] swap = gPrev; gPrev = g; g = swap;
+      swap = fPrev; fPrev = f; f = swap;
+      evaluate(kernel, x, input, g, f);
+    }
+    return -1;
+  }
+
+  /**
+   * Step the state REST_STEP times and check it stays within
+   * REST_EPSILON of where it started, as init()'s at-rest test does.
+   *
+   * @return whether the state is at rest
+   */
+  private boolean settle(StepKernel kernel, ProteinState state) {
+    double[] c = state.concentrations;
+    double[] before = c.clone();
+    for (int t = 0; t < Grn.REST_STEP; t++)
+      kernel.step(c, state.inputConcentration);
+    return change(c, before) <= Grn.REST_EPSILON;
+  }
+
+  /**
+   * g = F(x), f = g - x
+   */
+  private void evaluate(StepKernel kernel, double[] x, double input, double[] g, double[] f) {
+    System.arraycopy(x, 0, g, 0, x.length);
+    kernel.step(g, input);
+    for (int i = 0; i < x.length; i++)
+      f[i] = g[i] - x[i];
+  }
+
+  /**
+   * Largest single step change from the current state.
+   */
+  private double residual(StepKernel kernel, ProteinState state) {
+    double[] g = new double[state.concentrations.length];
+    double[] f = new double[g.length];
+    evaluate(kernel, state.concentrations, state.inputConcentration, g, f);
+    return maxAbs(f);
+  }
+
+  /**
+   * Clamp to non-negative values and renormalise the TF and P totals.
+   * Clamping to Grn.ZERO instead stalls the mixing, as the time step
+   * itself leaves clamped proteins slightly below ZERO after
+   * renormalisation. Inputs are never mixed away from their values, so
+   * are left as they are.
+   */
+  private void project(double[] x, ProteinState state) {
+    for (int i = 0; i < state.nTf; i++)
+      if (x[i] < 0.0)
+        x[i] = 0.0;
+    for (int i = state.pOffset(); i < x.length; i++)
+      if (x[i] < 0.0)
+        x[i] = 0.0;
+    scale(x, 0, state.nTf, 1.0 - state.inputConcentration);
+    scale(x, state.pOffset(), state.nP, 1.0);
+  }
+
+  private static void scale(double[] x, int from, int length, double total) {
+    double sum = 0;
+    for (int i = from; i < from + length; i++)
+      sum += x[i];
+    if (sum > 0.0)
+      for (int i = from; i < from + length; i++)
+        x[i] = x[i] * total / sum;
+  }
+
+  /**
+   * Solve the m x m normal equations (dF^T dF + lambda I) gamma = dF^T f
+   * by Gaussian elimination with partial pivoting. The solution is
+   * left in b.
+   *
+   * @return false if the system is singular
+   */
+  private static boolean leastSquares(double[][] dF, double[] f, int m, double[][] a, double[] b) {
+    double trace = 0;
+    for (int j = 0; j < m; j++) {
+      for (int k = 0; k <= j; k++) {
+        double dot = 0;
+        for (int i = 0; i < f.length; i++)
+          dot += dF[j][i] * dF[k][i];
+        a[j][k] = dot;
+        a[k][j] = dot;
+      }
+      double dot = 0;
+      for (int i = 0; i < f.length; i++)
+        dot += dF[j][i] * f[i];
+      b[j] = dot;
+      trace += a[j][j];
+    }
+    if (trace == 0.0)
+      return false;
+    for (int j = 0; j < m; j++)
+      a[j][j] += 1e-12 * trace;
+
+    for (int col = 0; col < m; col++) {
+      int pivot = col;
+      for (int r = col + 1; r < m; r++)
+        if (Math.abs(a[r][col]) > Math.abs(a[pivot][col]))
+          pivot = r;
+      if (a[pivot][col] == 0.0)
+        return false;
+      double[] rowSwap = a[col]; a[col] = a[pivot]; a[pivot] = rowSwap;
+      double swap = b[col]; b[col] = b[pivot]; b[pivot] = swap;
+
+      for (int r = col + 1; r < m; r++) {
+        double factor = a[r][col] / a[col][col];
+        for (int k = col; k < m; k++)
+          a[r][k] -= factor * a[col][k];
+        b[r] -= factor * b[col];
+      }
+    }
+    for (int r = m - 1; r >= 0; r--) {
+      double sum = b[r];
+      for (int k = r + 1; k < m; k++)
+        sum -= a[r][k] * b[k];
+      b[r] = sum / a[r][r];
+    }
+    return true;
+  }
+
+  private static double maxAbs(double[] v) {
+    double max = 0;
+    for (double d : v) {
+      if (Double.isNaN(d))
+        return d;
+      max = Math.max(max, Math.abs(d));
+    }
+    return max;
+  }
+}
@@ -0,0 +1,285 @@
+package grn;
+
+import java.lang.reflect.InvocationTargetException;
+
+/**
+ * The compiled regulation step of a single network.
+ *
+ * The enhancer and inhibitor match tables are folded into one dense,
+ * row-major weight matrix: genes x TF proteins, where each entry is
+ * exp[cbits[0]] - exp[cbits[1]]. A time step is then a single
+ * matrix-vector product over a flat concentration vector followed by
+ * the update and renormalisation passes. All scratch storage is
+ * allocated up front so stepping allocates nothing.
+ *
+ * The concentration vector uses the same layout as a row of
+ * Grn.results: TF proteins, input TF proteins, P proteins.
+ *
+ * A kernel holds scratch state and must not be shared between threads;
+ * share() gives another kernel over the same compiled weights.
+ */
+public class StepKernel {
+
+  /** The available step implementations */
+  public enum Engine {
+    /** Plain Java loops */
+    SCALAR,
+    /** JDK Vector API, falling back to SCALAR when unavailable */
+    VECTOR,
+    /** Compressed rows of the weights above a tolerance, see SparseStepKernel */
+    SPARSE,
+    /** Single precision, on the JDK Vector API when available, see FloatStepKernel */
+    FLOAT
+  }
+
+  /** Whether the jdk.incubator.vector module is resolved in this JVM */
+  public static final boolean VECTOR_AVAILABLE = isVectorApiAvailable();
+
+  /** Whether the Vector API kernels can be loaded, cleared when one fails to */
+  private static volatile boolean vectorKernels = VECTOR_AVAILABLE;
+
+  /**
+   * Row-major weights: all genes x TF proteins (including inputs), or
+   * null for kernels that keep only a compiled form of their own
+   */
+  public final double[] weights;
+
+  /** Number of TF genes, i.e. the number of non-input TF proteins */
+  public final int nTfGenes;
+
+  /** Number of P genes */
+  public final int nPGenes;
+
+  /** Number of TF proteins including inputs, i.e. the row length */
+  public final int nTfProteins;
+
+  /** Regulatory signal per gene for the current step */
+  protected final double[] signals;
+
+  /**
+   * Compiles a kernel from a fully populated match table.
+   *
+   * @param cbits the umax - complementaryBitCount lookup table
+   * @param nTfGenes number of TF genes
+   * @param nPGenes number of P genes
+   * @param nTfProteins number of TF proteins, including inputs
+   */
+  public StepKernel(int[][][] cbits, int nTfGenes, int nPGenes, int nTfProteins) {
+    this(compileWeights(cbits, nTfGenes + nPGenes, nTfProteins,
+                        new double[(nTfGenes + nPGenes) * nTfProteins]),
+         nTfGenes, nPGenes, nTfProteins);
+  }
+
+  /**
+   * Creates a kernel over an already compiled weight matrix.
+   *
+   * @param weights row-major genes x TF proteins weights
+   * @param nTfGenes number of TF genes
+   * @param nPGenes number of P genes
+   * @param nTfProteins number of TF proteins, including inputs
+   */
+  public StepKernel(double[] weights, int nTfGenes, int nPGenes, int nTfProteins) {
+    this.weights = weights;
+    this.nTfGenes = nTfGenes;
+    this.nPGenes = nPGenes;
+    this.nTfProteins = nTfProteins;
+    this.signals = new double[nTfGenes + nPGenes];
+  }
+
+  /**
+   * Creates a kernel of the requested engine over a compiled weight
+   * matrix. VECTOR falls back to SCALAR if the Vector API is not
+   * available or its kernels fail to load, FLOAT to FloatStepKernel;
+   * after one failure they are not tried again. SPARSE drops weights
+   * no larger than SparseStepKernel.DEFAULT_TOLERANCE.
+   *
+   * @param engine the requested engine
+   * @param weights row-major genes x TF proteins weights
+   * @param nTfGenes number of TF genes
+   * @param nPGenes number of P genes
+   * @param nTfProteins number of TF proteins, including inputs
+   * @return a new kernel
+   */
+  public static StepKernel create(Engine engine, double[] weights, int nTfGenes, int nPGenes, int nTfProteins) {
+    return create(engine, weights, nTfGenes, nPGenes, nTfProteins, SparseStepKernel.DEFAULT_TOLERANCE);
+  }
+
+  /**
+   * Creates a kernel of the requested engine over a compiled weight
+   * matrix.
+   *
+   * @param engine the requested engine
+   * @param weights row-major genes x TF proteins weights
+   * @param nTfGenes number of TF genes
+   * @param nPGenes number of P genes
+   * @param nTfProteins number of TF proteins, including inputs
+   * @param tolerance weights a SPARSE kernel drops, ignored by the others
+   * @return a new kernel
+   */
+  public static StepKernel create(Engine engine, double[] weights, int nTfGenes, int nPGenes, int nTfProteins,
+                                  double tolerance) {
+    if (engine == Engine.SPARSE)
+      return new SparseStepKernel(weights, nTfGenes, nPGenes, nTfProteins, tolerance);
+    if ((engine == Engine.VECTOR || engine == Engine.FLOAT) && vectorKernels) {
+      try {
+        return (StepKernel)Class.forName(engine == Engine.FLOAT ? "grn.VectorFloatStepKernel" : "grn.VectorStepKernel")
+          .getConstructor(double[].class, int.class, int.class, int.class)
+          .newInstance(weights, nTfGenes, nPGenes, nTfProteins);
+      }
+      catch (ClassNotFoundException | LinkageError e) {
+        /* The Vector API cannot be loaded: fall back quietly from now on */
+        vectorKernels = false;
+      }
+      catch (InvocationTargetException e) {
+        /* The kernel's own constructor failed */
+        Throwable cause = e.getCause();
+        if (cause instanceof RuntimeException)
+          throw (RuntimeException)cause;
+        if (cause instanceof Error)
+          throw (Error)cause;
+        throw new IllegalStateException(cause);
+      }
+      catch (ReflectiveOperationException e) {
+        throw new IllegalStateException("Cannot construct the "+engine+" kernel", e);
+      }
+    }
+    if (engine == Engine.FLOAT)
+      return new FloatStepKernel(weights, nTfGenes, nPGenes, nTfProteins);
+    return new StepKernel(weights, nTfGenes, nPGenes, nTfProteins);
+  }
+
+  /**
+   * @return the engine this kernel implements
+   */
+  public Engine engine() {
+    return Engine.SCALAR;
+  }
+
+  /**
+   * @return a kernel of the same engine over the same compiled weights,
+   * with scratch storage of its own
+   */
+  public StepKernel share() {
+    return create(engine(), weights, nTfGenes, nPGenes, nTfProteins);
+  }
+
+  /**
+   * Called after the weights this kernel was created over have been
+   * rewritten in place, for kernels that compile a form of their own.
+   *
+   * @param weights the rewritten row-major genes x TF proteins weights
+   */
+  public void weightsChanged(double[] weights) {
+    /* Dense kernels read weights directly */
+  }
+
+  private static boolean isVectorApiAvailable() {
+    try {
+      Class.forName("jdk.incubator.vector.DoubleVector");
+      return true;
+    }
+    catch (ClassNotFoundException | LinkageError e) {
+      return false;
+    }
+  }
+
+  /**
+   * Folds the enhancer and inhibitor tables into one row-major
+   * matrix of enhancer-minus-inhibitor weights.
+   *
+   * @param cbits the umax - complementaryBitCount lookup table
+   * @param rows number of genes
+   * @param cols number of TF proteins, including inputs
+   * @param w storage for the matrix, at least rows x cols long
+   * @return w, holding the rows x cols weight matrix
+   */
+  public static double[] compileWeights(int[][][] cbits, int rows, int cols, double[] w) {
+    double[] exp = ProteinProducer.exp;
+    for (int g = 0; g < rows; g++) {
+      int[] enh = cbits[0][g];
+      int[] inh = cbits[1][g];
+      int row = g * cols;
+      for (int j = 0; j < cols; j++)
+        w[row + j] = exp[enh[j]] - exp[inh[j]];
+    }
+    return w;
+  }
+
+  /**
+   * Advance the network one time step, in place. Production rates are
+   * delta * (enhance - inhibit) with delta = 1 and no decay, as in
+   * the original model. TF rates are scaled by the producing protein's
+   * concentration, P rates are not.
+   *
+   * Fewer P proteins than P genes may be present, in which case only
+   * the leading P gene rows are used.
+   *
+   * @param c concentrations: TF proteins, input TF proteins, P proteins
+   * @param inputConcentration sum total of the input concentrations
+   */
+  public void step(double[] c, double inputConcentration) {
+    int n = nTfProteins;
+    int nP = c.length - n;
+
+    regulate(c, nTfGenes + nP);
+
+    /* Update protein concentrations c += dc/dt */
+    for (int i = 0; i < nTfGenes; i++) {
+      c[i] += signals[i] * c[i];
+      if (c[i] < Grn.ZERO)
+        c[i] = Grn.ZERO;
+    }
+    for (int i = 0; i < nP; i++) {
+      c[n + i] += signals[nTfGenes + i];
+      if (c[n + i] < Grn.ZERO)
+        c[n + i] = Grn.ZERO;
+    }
+
+    normalise(c, 0, nTfGenes, 1.0 - inputConcentration);
+    normalise(c, n, nP, 1.0);
+  }
+
+  /**
+   * Compute the regulatory signal of the first rows genes: the
+   * weighted sum of TF concentrations, averaged over the TF proteins.
+   *
+   * @param c concentration vector
+   * @param rows number of gene rows to evaluate
+   */
+  protected void regulate(double[] c, int rows) {
+    int n = nTfProteins;
+    if (n == 0) {
+      for (int g = 0; g < rows; g++)
+        signals[g] = 0.0;
+      return;
+    }
+
+    for (int g = 0; g < rows; g++) {
+      int row = g * n;
+      double signal = 0.0;
+      for (int j = 0; j < n; j++)
+        signal += weights[row + j] * c[j];
+      signals[g] = signal / (double)n;
+    }
+  }
+
+  /**
+   * Rescale a run of concentrations so they sum to total.
+   *
+   * @param c concentration vector
+   * @param from first index of the run
+   * @param length length of the run
+   * @param total the required sum total
+   */
+  protected void normalise(double[] c, int from, int length, double total) {
+    double sum = 0;
+    for (int i = from; i < from + length; i++)
+      sum += c[i];
+
+    if (sum > 0.0)
+      for (int i = from; i < from + length; i++) {
+        c[i] *= total;
+        c[i] /= sum;
+      }
+  }
+}
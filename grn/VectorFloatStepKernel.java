@@ -0,0 +1,98 @@
+package grn;
+
+import jdk.incubator.vector.FloatVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * A FloatStepKernel whose regulatory-signal dot products and
+ * renormalisation passes use the JDK Vector API, with twice the lanes
+ * of VectorStepKernel.
+ *
+ * Requires the jdk.incubator.vector module to be resolved. Never refer
+ * to this class directly; StepKernel.create() loads it reflectively
+ * and falls back to FloatStepKernel when the module is missing.
+ *
+ * Lane-wise summation reorders the additions, so results may differ
+ * from FloatStepKernel in the last bits.
+ */
+public class VectorFloatStepKernel extends FloatStepKernel {
+
+  /** The widest float vector shape the platform supports */
+  private static final VectorSpecies<Float> SPECIES = FloatVector.SPECIES_PREFERRED;
+
+  /**
+   * Creates a kernel over an already compiled weight matrix.
+   *
+   * @param weights row-major genes x TF proteins weights
+   * @param nTfGenes number of TF genes
+   * @param nPGenes number of P genes
+   * @param nTfProteins number of TF proteins, including inputs
+   */
+  public VectorFloatStepKernel(double[] weights, int nTfGenes, int nPGenes, int nTfProteins) {
+    super(weights, nTfGenes, nPGenes, nTfProteins);
+  }
+
+  /**
+   * Creates a kernel sharing another's float weights.
+   *
+   * @param other the kernel to share
+   */
+  protected VectorFloatStepKernel(VectorFloatStepKernel other) {
+    super(other);
+  }
+
+  @Override
+  public StepKernel share() {
+    return new VectorFloatStepKernel(this);
+  }
+
+  @Override
+  protected void regulate(float[] x, int rows) {
+    int n = nTfProteins;
+    if (n == 0) {
+      for (int g = 0; g < rows; g++)
+        floatSignals[g] = 0.0f;
+      return;
+    }
+
+    int upper = SPECIES.loopBound(n);
+    for (int g = 0; g < rows; g++) {
+      int row = g * n;
+      FloatVector acc = FloatVector.zero(SPECIES);
+      int j = 0;
+      for (; j < upper; j += SPECIES.length()) {
+        FloatVector w = FloatVector.fromArray(SPECIES, floatWeights, row + j);
+        FloatVector v = FloatVector.fromArray(SPECIES, x, j);
+        acc = w.fma(v, acc);
+      }
+      float signal = acc.reduceLanes(VectorOperators.ADD);
+      for (; j < n; j++)
+        signal += floatWeights[row + j] * x[j];
+      floatSignals[g] = signal / (float)n;
+    }
+  }
+
+  @Override
+  protected void normalise(float[] x, int from, int length, float total) {
+    int end = from + length;
+    int upper = from + SPECIES.loopBound(length);
+
+    FloatVector acc = FloatVector.zero(SPECIES);
+    int i = from;
+    for (; i < upper; i += SPECIES.length())
+      acc = acc.add(FloatVector.fromArray(SPECIES, x, i));
+    float sum = acc.reduceLanes(VectorOperators.ADD);
+    for (; i < end; i++)
+      sum += x[i];
+
+    if (sum > 0.0f) {
+      for (i = from; i < upper; i += SPECIES.length())
+        FloatVector.fromArray(SPECIES, x, i).mul(total).div(sum).intoArray(x, i);
+      for (; i < end; i++) {
+        x[i] *= total;
+        x[i] /= sum;
+      }
+    }
+  }
+}
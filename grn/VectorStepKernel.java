@@ -0,0 +1,89 @@
+package grn;
+
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * A StepKernel whose regulatory-signal dot products and
+ * renormalisation passes use the JDK Vector API.
+ *
+ * Requires the jdk.incubator.vector module to be resolved, i.e. running
+ * with --add-modules jdk.incubator.vector. Never refer to this class
+ * directly; StepKernel.create() loads it reflectively and falls back
+ * to the scalar kernel when the module is missing.
+ *
+ * Lane-wise summation reorders the additions, so results may differ
+ * from the scalar kernel in the last bits.
+ */
+public class VectorStepKernel extends StepKernel {
+
+  /** The widest double vector shape the platform supports */
+  private static final VectorSpecies<Double> SPECIES = DoubleVector.SPECIES_PREFERRED;
+
+  /**
+   * Creates a kernel over an already compiled weight matrix.
+   *
+   * @param weights row-major genes x TF proteins weights
+   * @param nTfGenes number of TF genes
+   * @param nPGenes number of P genes
+   * @param nTfProteins number of TF proteins, including inputs
+   */
+  public VectorStepKernel(double[] weights, int nTfGenes, int nPGenes, int nTfProteins) {
+    super(weights, nTfGenes, nPGenes, nTfProteins);
+  }
+
+  @Override
+  public Engine engine() {
+    return Engine.VECTOR;
+  }
+
+  @Override
+  protected void regulate(double[] c, int rows) {
+    int n = nTfProteins;
+    if (n == 0) {
+      for (int g = 0; g < rows; g++)
+        signals[g] = 0.0;
+      return;
+    }
+
+    int upper = SPECIES.loopBound(n);
+    for (int g = 0; g < rows; g++) {
+      int row = g * n;
+      DoubleVector acc = DoubleVector.zero(SPECIES);
+      int j = 0;
+      for (; j < upper; j += SPECIES.length()) {
+        DoubleVector w = DoubleVector.fromArray(SPECIES, weights, row + j);
+        DoubleVector x = DoubleVector.fromArray(SPECIES, c, j);
+        acc = w.fma(x, acc);
+      }
+      double signal = acc.reduceLanes(VectorOperators.ADD);
+      for (; j < n; j++)
+        signal += weights[row + j] * c[j];
+      signals[g] = signal / (double)n;
+    }
+  }
+
+  @Override
+  protected void normalise(double[] c, int from, int length, double total) {
+    int end = from + length;
+    int upper = from + SPECIES.loopBound(length);
+
+    DoubleVector acc = DoubleVector.zero(SPECIES);
+    int i = from;
+    for (; i < upper; i += SPECIES.length())
+      acc = acc.add(DoubleVector.fromArray(SPECIES, c, i));
+    double sum = acc.reduceLanes(VectorOperators.ADD);
+    for (; i < end; i++)
+      sum += c[i];
+
+    if (sum > 0.0) {
+      for (i = from; i < upper; i += SPECIES.length())
+        DoubleVector.fromArray(SPECIES, c, i).mul(total).div(sum).intoArray(c, i);
+      for (; i < end; i++) {
+        c[i] *= total;
+        c[i] /= sum;
+      }
+    }
+  }
+}
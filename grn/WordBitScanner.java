@@ -0,0 +1,107 @@
+package grn;
+
+/**
+ * A BitScanner that finds promoters 64 bit offsets at a time.
+ *
+ * A promoter starts at bit index i when the low 8 bits of the 32 bits
+ * from i, i.e. bits i+24 to i+31, are all 0 (TF_PROMOTER) or all 1
+ * (P_PROMOTER). For each 64 bit word of the genome a mask of every
+ * offset that starts a run of eight equal bits is built with SWAR
+ * shifts: AND-ing the word with itself shifted by 1 to 7 places,
+ * pulling the shifted-in bits from the following word. The next
+ * promoter is then the first set bit of the masks at or after the
+ * search position, so gene discovery costs a handful of word
+ * operations per 64 bits instead of two 32 bit reconstructions per
+ * bit.
+ *
+ * The genes found, and the non-overlap rule, are identical to
+ * BitScanner's.
+ */
+public class WordBitScanner extends BitScanner {
+
+  /**
+   * Creates a new WordBitScanner and initiates the search for genes.
+   *
+   * @param codons the genome to be searched - a bit sequence represented by 32 bit integers
+   */
+  public WordBitScanner(int[] codons) {
+    super(codons);
+  }
+
+  /**
+   * Find the next promoter site of either gene class. Overlapping
+   * genes are omitted.
+   *
+   * @param prevIndex the index of the previous promoter site
+   * @return the index of the next promoter site, or -1
+   */
+  @Override
+  protected int nextPromoter(int prevIndex) {
+    if (prevIndex < 0)
+      prevIndex = STARTING_INDEX;
+
+    /* Jump over the previous gene */
+    return nextPromoter(chromo, prevIndex + Gene.SIZE*32);
+  }
+
+  /**
+   * Find the first promoter at or after a bit index.
+   *
+   * @param chromo the genome
+   * @param from the first bit index a promoter may start at, at least 0
+   * @return the index of the promoter, or -1 if there are not enough
+   * bits left to hold another gene
+   */
+  public static int nextPromoter(int[] chromo, int from) {
+    int limit = chromo.length*32 - 192;
+    if (from > limit)
+      return -1;
+
+    /* Search for the start of the uniform byte rather than the promoter */
+    long q = from + 24L;
+    int word = (int)(q >>> 6);
+    long mask = uniformByteMask(chromo, word) & (-1L >>> (q & 63));
+
+    while (mask == 0) {
+      word++;
+      if ((long)word * 64 - 24 > limit)
+        return -1;
+      mask = uniformByteMask(chromo, word);
+    }
+
+    long index = (long)word * 64 + Long.numberOfLeadingZeros(mask) - 24;
+    return index > limit ? -1 : (int)index;
+  }
+
+  /**
+   * Mask of the bit offsets within a 64 bit word at which eight equal
+   * bits start. Offset j of the word is bit 63-j of the mask, matching
+   * the genome's most-significant-bit-first order.
+   *
+   * @param chromo the genome
+   * @param word index of the 64 bit word
+   * @return the mask
+   */
+  static long uniformByteMask(int[] chromo, int word) {
+    long hi = word(chromo, word);
+    long lo = word(chromo, word + 1);
+
+    long ones = hi, zeros = ~hi;
+    for (int s = 1; s < 8; s++) {
+      long shifted = (hi << s) | (lo >>> (64 - s));
+      ones &= shifted;
+      zeros &= ~shifted;
+    }
+    return ones | zeros;
+  }
+
+  /**
+   * @return the 64 bits of a word of the genome, zero padded past its end
+   */
+  private static long word(int[] chromo, int word) {
+    int i = word * 2;
+    long hi = i < chromo.length ? chromo[i] : 0;
+    long lo = i + 1 < chromo.length ? chromo[i + 1] : 0;
+    return (hi << 32) | (lo & 0xFFFFFFFFL);
+  }
+}
@@ -0,0 +1,82 @@
+package grn;
+
+import grn.sink.FinalStateSink;
+
+/**
+ * Reusable storage for building and running many networks one after
+ * another on the same thread. Buffers only ever grow, so after a few
+ * genomes a worker stops allocating tables and state buffers entirely.
+ *
+ * A network built on a workspace borrows its lookup table and weights
+ * from it; such a network is only valid until the next network is
+ * built on the same workspace. Not thread safe.
+ */
+class Workspace {
+
+  /** Lookup table storage: 2 x genes x TF proteins, possibly oversized */
+  private int[][][] cbits = new int[2][0][];
+
+  /** Weight matrix storage */
+  private double[] weights = new double[0];
+
+  /** Recent state storage for at-rest checks: time steps x proteins, possibly oversized */
+  private double[][] trajectory = new double[0][];
+
+  /** Sink for runs that only need the final state */
+  private final FinalStateSink finalState = new FinalStateSink();
+
+  /**
+   * @param genes number of gene rows required
+   * @param n number of TF proteins, including inputs
+   * @return a lookup table with at least the requested dimensions
+   */
+  int[][][] matchTable(int genes, int n) {
+    for (int type = 0; type < 2; type++) {
+      int[][] rows = cbits[type];
+      if (rows.length < genes) {
+        int[][] grown = new int[Math.max(genes, rows.length * 2)][];
+        System.arraycopy(rows, 0, grown, 0, rows.length);
+        rows = grown;
+        cbits[type] = rows;
+      }
+      for (int g = 0; g < genes; g++)
+        if (rows[g] == null || rows[g].length < n)
+          rows[g] = new int[n];
+    }
+    return cbits;
+  }
+
+  /**
+   * @param size number of weights required
+   * @return a weight buffer of at least size entries
+   */
+  double[] weights(int size) {
+    if (weights.length < size)
+      weights = new double[Math.max(size, weights.length * 2)];
+    return weights;
+  }
+
+  /**
+   * @return a sink keeping only the final state of a run
+   */
+  FinalStateSink finalState() {
+    return finalState;
+  }
+
+  /**
+   * @param steps number of rows required
+   * @param n number of proteins per row
+   * @return a trajectory buffer of at least steps rows of at least n columns
+   */
+  double[][] trajectory(int steps, int n) {
+    if (trajectory.length < steps) {
+      double[][] grown = new double[steps][];
+      System.arraycopy(trajectory, 0, grown, 0, trajectory.length);
+      trajectory = grown;
+    }
+    for (int t = 0; t < steps; t++)
+      if (trajectory[t] == null || trajectory[t].length < n)
+        trajectory[t] = new double[n];
+    return trajectory;
+  }
+}
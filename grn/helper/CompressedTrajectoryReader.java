@@ -0,0 +1,188 @@
+package grn.helper;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Reads a compressed trajectory file written by
+ * CompressedTrajectoryWriter, either all at once with readAll() or a
+ * row at a time with next(), which only ever holds one decoded block.
+ * The file is mapped rather than read, a window at a time, so files
+ * of any size can be read.
+ */
+public class CompressedTrajectoryReader implements Closeable {
+
+  /** Number of TF proteins, excluding inputs */
+  public final int nTf;
+
+  /** Number of input TF proteins */
+  public final int nInputs;
+
+  /** Number of P proteins */
+  public final int nP;
+
+  /** Largest number of rows per block */
+  public final int blockRows;
+
+  /** Number of rows */
+  public final long steps;
+
+  /** Bits of absolute precision the concentrations were rounded to, 0 if exact */
+  public final int precisionBits;
+
+  /** Approximate size of each mapped window */
+  private static final int WINDOW_SIZE = 1 << 24;
+
+  /** The file being read */
+  private final FileChannel channel;
+
+  /** Size of the file */
+  private final long size;
+
+  /** The mapped window, null until the first block */
+  private MappedByteBuffer window;
+
+  /** Offset of the window in the file */
+  private long windowStart;
+
+  /** Offset of the next block in the file */
+  private long position = CompressedTrajectoryWriter.HEADER_SIZE;
+
+  /** The current decoded block, row-major */
+  private final double[] block;
+
+  /** Rows in the current block, and the next row to hand out */
+  private int rows, next;
+
+  /** Rows handed out */
+  private long read;
+
+  /**
+   * @param fileName the file to read
+   * @throws IOException if the file cannot be read or is not a compressed trajectory file
+   */
+  public CompressedTrajectoryReader(String fileName) throws IOException {
+    channel = FileChannel.open(Paths.get(fileName), StandardOpenOption.READ);
+    size = channel.size();
+    ByteBuffer header = size < CompressedTrajectoryWriter.HEADER_SIZE ? null
+      : map(0, CompressedTrajectoryWriter.HEADER_SIZE);
+    if (header == null || header.getInt(0) != CompressedTrajectoryWriter.MAGIC
+        || header.getInt(4) != CompressedTrajectoryWriter.VERSION) {
+      channel.close();
+      throw new IOException(fileName+" is not a version "+CompressedTrajectoryWriter.VERSION
+                            +" compressed trajectory file");
+    }
+    nTf = header.getInt(8);
+    nInputs = header.getInt(12);
+    nP = header.getInt(16);
+    blockRows = header.getInt(20);
+    steps = header.getLong(CompressedTrajectoryWriter.STEPS_OFFSET);
+    precisionBits = header.getInt(CompressedTrajectoryWriter.PRECISION_OFFSET);
+
+    block = new double[blockRows * width()];
+  }
+
+  /**
+   * @return number of proteins per row
+   */
+  public int width() {
+    return nTf + nInputs + nP;
+  }
+
+  /**
+   * Decode the next row.
+   *
+   * @param row array of at least width() concentrations to fill
+   * @return false if there are no more rows
+   */
+  public boolean next(double[] row) {
+    if (next == rows) {
+      if (read == steps)
+        return false;
+      decodeBlock();
+    }
+    System.arraycopy(block, next * width(), row, 0, width());
+    next++;
+    read++;
+    return true;
+  }
+
+  /**
+   * Decode every remaining row.
+   *
+   * @return the rows, as Grn.results
+   */
+  public double[][] readAll() {
+    if (steps - read > Integer.MAX_VALUE)
+      throw new IllegalStateException((steps - read)+" rows do not fit in an array");
+    double[][] results = new double[(int)(steps - read)][width()];
+    for (int t = 0; t < results.length; t++)
+      next(results[t]);
+    return results;
+  }
+
+  public void close() throws IOException {
+    window = null;
+    channel.close();
+  }
+
+  /**
+   * Decode the block at the current position.
+   */
+  private void decodeBlock() {
+    int n = width();
+    try {
+      ByteBuffer lengths = map(position, 4 + 4 * n);
+      rows = lengths.getInt(0);
+      int blockSize = 4 + 4 * n;
+      for (int i = 0; i < n; i++)
+        blockSize += lengths.getInt(4 + 4 * i);
+
+      ByteBuffer blocks = map(position, blockSize);
+      int data = 4 + 4 * n;
+      for (int i = 0; i < n; i++) {
+        int length = blocks.getInt(4 + 4 * i);
+        blocks.position(data);
+        XorCodec.decode(blocks, length, block, i, n, rows);
+        data += length;
+      }
+      position += blockSize;
+    }
+    catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+    next = 0;
+  }
+
+  /**
+   * @return a little endian view of a region of the file, from its
+   * first byte, through the window when the region lies within it
+   */
+  private ByteBuffer map(long offset, int length) throws IOException {
+    if (offset + length > size)
+      throw new IOException("Truncated trajectory file: "+(offset + length)+" bytes needed, "+size+" present");
+    if (window == null || offset < windowStart || offset + length > windowStart + window.capacity()) {
+      window = channel.map(FileChannel.MapMode.READ_ONLY, offset, Math.max(length, Math.min(WINDOW_SIZE, size - offset)));
+      windowStart = offset;
+    }
+    ByteBuffer region = window.duplicate();
+    region.position((int)(offset - windowStart)).limit((int)(offset - windowStart) + length);
+    return region.slice().order(ByteOrder.LITTLE_ENDIAN);
+  }
+
+  /**
+   * Converts a compressed trajectory file to the text format of GRNPrinter.
+   *
+   * @param args the compressed file, then the text file to append to
+   */
+  public static void main(String[] args) {
+    GRNPrinter.printCompressedTrajectoryToFile(args[0], args[1]);
+  }
+}
@@ -6,23 +6,36 @@ import grn.Protein;
 import grn.ProteinProducer;
 
 import java.io.BufferedReader;
-import java.io.File;
-import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
-import java.util.Iterator;
-import java.util.List;
-import java.util.Scanner;
 import java.util.regex.Pattern;
 import java.util.regex.Matcher;
 
 public class GRNLoader {
 
+  /** Bytes read from a file at a time */
+  private static final int READ_SIZE = 1 << 20;
+
   private GRNLoader() {
     ;
   }
 
+  /**
+   * Receives genomes one at a time as they are read from a file.
+   */
+  public interface GenomeConsumer {
+    /**
+     * @param index position of the genome in the file, from 0
+     * @param codons the genome, which the consumer may keep
+     */
+    void accept(int index, int[] codons);
+  }
+
   /**
    * Constructs a Grn object from a genes file.
    *
@@ -37,70 +50,257 @@ public class GRNLoader {
    * @return the constructed grn
    */
   public static Grn readFromGenesFile(String filename) {
-    ArrayList<Gene> tfGenes = new ArrayList<Gene>();
-    ArrayList<Gene> pGenes = new ArrayList<Gene>();
-    Grn grn = null;
+    final ArrayList<int[]> genome = new ArrayList<int[]>();
 
     try {
-      FileInputStream fs = new FileInputStream(new File(filename));
-      Scanner scanner = new Scanner(fs);
+      parse(filename, false, false, new GenomeConsumer() {
+          public void accept(int index, int[] codons) {
+            genome.add(codons);
+          }
+        });
+    }
+    catch (IOException e) {
+      e.printStackTrace();
+    }
 
-      StringBuffer sb = new StringBuffer();
-      if (scanner.hasNext())
-        sb.append(scanner.next());
-      while (scanner.hasNext())
-        sb.append(" "+scanner.next());
-      grn = new Grn(sb.toString(), new ArrayList<Protein>());
+    return genome.isEmpty() ? null : new Grn(genome.get(0), new ArrayList<Protein>());
+  }
 
-      fs.close();
+  /**
+   * Streams the genomes of a multi-genome genes file to a consumer.
+   *
+   * The file holds genomes in the format of a .genes file, separated
+   * by blank lines. The file is parsed a buffer of bytes at a time
+   * straight into codons, so only the genome being read is held in
+   * memory.
+   *
+   * @param filename the file to open
+   * @param consumer receives each genome in file order
+   * @return the number of genomes read
+   */
+  public static int readGenomes(String filename, GenomeConsumer consumer) {
+    try {
+      return parse(filename, false, true, consumer);
     }
     catch (IOException e) {
       e.printStackTrace();
     }
-
-    return grn;
+    return -1;
   }
 
-  public static Grn readFromBinaryTextFile(String filename) {
-    ArrayList<Integer> genes = new ArrayList<Integer>();
-    Grn grn = null;
+  /**
+   * Reads every genome of a multi-genome genes file.
+   *
+   * @param filename the file to open
+   * @return the genomes in file order
+   */
+  public static ArrayList<int[]> readGenomes(String filename) {
+    final ArrayList<int[]> genomes = new ArrayList<int[]>();
+    readGenomes(filename, new GenomeConsumer() {
+        public void accept(int index, int[] codons) {
+          genomes.add(codons);
+        }
+      });
+    return genomes;
+  }
 
+  /**
+   * Streams the genomes of a multi-genome binary text file to a
+   * consumer.
+   *
+   * Each genome is a string of '0' and '1' characters, 32 to a codon,
+   * most significant bit first; a short last codon is padded with 0s.
+   * Whitespace is ignored, except that blank lines separate genomes.
+   *
+   * @param filename the file to open
+   * @param consumer receives each genome in file order
+   * @return the number of genomes read
+   */
+  public static int readBinaryTextGenomes(String filename, GenomeConsumer consumer) {
     try {
-      FileInputStream fs = new FileInputStream(new File(filename));
-      byte[] chars = new byte[32];
-      int len;
-      while((len = fs.read(chars)) > 0) {
-        genes.add(binaryArrayToInt(chars, len));
-      }
+      return parse(filename, true, true, consumer);
+    }
+    catch (IOException e) {
+      e.printStackTrace();
+    }
+    return -1;
+  }
 
-      grn = new Grn(convertIntegers(genes));
+  public static Grn readFromBinaryTextFile(String filename) {
+    final ArrayList<int[]> genome = new ArrayList<int[]>();
 
-      fs.close();
+    try {
+      parse(filename, true, false, new GenomeConsumer() {
+          public void accept(int index, int[] codons) {
+            genome.add(codons);
+          }
+        });
     }
     catch (IOException e) {
       e.printStackTrace();
+      return null;
     }
 
-    return grn;
+    return new Grn(genome.isEmpty() ? new int[0] : genome.get(0));
   }
 
-  private static int binaryArrayToInt(byte[] bits, int length) {
-    int a = 0;
-    for (int i = 0; i < length; i++) {
-      if (bits[i] == '0' || bits[i] == '1')
-        a |= ((int)bits[i]-48) << (31 - i);
+  /**
+   * Parse a file of genomes, decimal or binary text.
+   *
+   * @param separate whether blank lines end genomes, or the whole file is one
+   * @return the number of genomes read
+   */
+  private static int parse(String filename, boolean binary, boolean separate, GenomeConsumer consumer)
+    throws IOException {
+    FileChannel channel = FileChannel.open(Paths.get(filename), StandardOpenOption.READ);
+    try {
+      GenomeParser parser = new GenomeParser(filename, binary, separate, consumer);
+      ByteBuffer buffer = ByteBuffer.allocate(READ_SIZE);
+      int len;
+      while ((len = channel.read(buffer)) >= 0) {
+        parser.parse(buffer.array(), len);
+        buffer.clear();
+      }
+      parser.finish();
+      return parser.genomes;
+    }
+    finally {
+      channel.close();
     }
-    return a;
   }
 
-  private static int[] convertIntegers(List<Integer> integers)
-  {
-    int[] ret = new int[integers.size()];
-    Iterator<Integer> iterator = integers.iterator();
-    for (int i = 0; i < ret.length; i++)
-      {
-        ret[i] = iterator.next().intValue();
+  /**
+   * Turns the bytes of a file of genomes into codons, handing each
+   * genome to a consumer as soon as it is complete.
+   */
+  private static class GenomeParser {
+    private final String filename;
+    private final boolean binary, separate;
+    private final GenomeConsumer consumer;
+
+    /** The genome being read */
+    private int[] codons = new int[1024];
+    private int n;
+
+    /** Genomes handed to the consumer */
+    int genomes;
+
+    /** The codon being read, and its number of digits or bits */
+    private long value;
+    private int digits;
+
+    /** Whether the decimal codon being read has a sign, and it is negative */
+    private boolean signed, negative;
+
+    /** Whether the current line holds no codons yet */
+    private boolean blank = true;
+
+    /** Offset in the file of the buffer being parsed */
+    private long offset;
+
+    GenomeParser(String filename, boolean binary, boolean separate, GenomeConsumer consumer) {
+      this.filename = filename;
+      this.binary = binary;
+      this.separate = separate;
+      this.consumer = consumer;
+    }
+
+    void parse(byte[] bytes, int len) {
+      /* Work on locals, the loop runs for every byte of the file */
+      long value = this.value;
+      int digits = this.digits;
+      boolean blank = this.blank;
+      for (int i = 0; i < len; i++) {
+        int b = bytes[i];
+        if (binary) {
+          if ((b & ~1) == '0') {
+            value = value << 1 | (b & 1);
+            blank = false;
+            if (++digits == 32) {
+              addCodon((int)value);
+              value = 0;
+              digits = 0;
+            }
+            continue;
+          }
+        }
+        else if (b >= '0' && b <= '9') {
+          value = value * 10 + (b - '0');
+          if (value > 1L << 31)
+            throw error("Codon out of range", i);
+          digits++;
+          blank = false;
+          continue;
+        }
+        else if ((b == '-' || b == '+') && !signed && digits == 0) {
+          signed = true;
+          negative = b == '-';
+          blank = false;
+          continue;
+        }
+
+        if (b == ' ' || b == '\n' || b == '\r' || b == '\t') {
+          if (!binary && (signed || digits > 0)) {
+            if (digits == 0 || value > (negative ? 1L << 31 : Integer.MAX_VALUE))
+              throw error("Malformed codon", i);
+            addCodon((int)(negative ? -value : value));
+            value = 0;
+            digits = 0;
+            signed = negative = false;
+          }
+          if (b == '\n') {
+            if (blank && separate && (n > 0 || digits > 0)) {
+              /* A short last codon is padded with 0s, as at the end of the file */
+              if (digits > 0) {
+                addCodon((int)(value << (32 - digits)));
+                value = 0;
+                digits = 0;
+              }
+              endGenome();
+            }
+            blank = true;
+          }
+          continue;
+        }
+        throw error("Unexpected character '"+(char)(b & 0xFF)+"'", i);
+      }
+      this.value = value;
+      this.digits = digits;
+      this.blank = blank;
+      offset += len;
+    }
+
+    void finish() {
+      if (binary && digits > 0) {
+        addCodon((int)(value << (32 - digits)));
+      }
+      else if (!binary && (signed || digits > 0)) {
+        if (digits == 0 || value > (negative ? 1L << 31 : Integer.MAX_VALUE))
+          throw error("Malformed codon", 0);
+        addCodon((int)(negative ? -value : value));
       }
-    return ret;
+      if (n > 0)
+        endGenome();
+    }
+
+    private void addCodon(int codon) {
+      if (n == codons.length) {
+        int[] grown = new int[codons.length * 2];
+        System.arraycopy(codons, 0, grown, 0, n);
+        codons = grown;
+      }
+      codons[n++] = codon;
+    }
+
+    private void endGenome() {
+      int[] genome = new int[n];
+      System.arraycopy(codons, 0, genome, 0, n);
+      consumer.accept(genomes++, genome);
+      n = 0;
+    }
+
+    private NumberFormatException error(String message, int i) {
+      return new NumberFormatException(message+" at byte "+(offset + i)+" of "+filename);
+    }
   }
 }
@@ -12,6 +12,7 @@ import java.text.DecimalFormat;
 import java.text.NumberFormat;
 
 import java.util.ArrayList;
+import java.util.List;
 
 /**
  * A helper class providing output methods for GRNs
@@ -82,6 +83,133 @@ public class GRNPrinter {
     }
   }
 
+  /**
+   * Append a network's trajectory to a binary trajectory file, the
+   * binary counterpart of printGRNToFile().
+   */
+  public static void writeGRNToBinaryFile(final String fileName, final Grn grn, final double[][] results) {
+    try {
+      TrajectoryWriter writer = new TrajectoryWriter(fileName);
+      writer.begin(grn.tfProteins.length - grn.numberOfInputs, grn.numberOfInputs, grn.pProteins.length,
+                   results.length - 1);
+      for (int t = 0; t < results.length; t++)
+        writer.record(t, results[t]);
+      writer.end(results.length - 1);
+      writer.close();
+    }
+    catch(IOException e){
+      e.printStackTrace();
+    }
+  }
+
+  /**
+   * Convert a binary trajectory file to the text format of
+   * printGRNToFile(), appending to the text file.
+   */
+  public static void printTrajectoryToFile(final String binaryFileName, final String fileName) {
+    try{
+      final TrajectoryReader reader = new TrajectoryReader(binaryFileName);
+      printRowsToFile(fileName, reader.nTf, reader.nInputs, reader.nP, new RowSource() {
+          long t = 0;
+          public boolean next(double[] row) {
+            if (t == reader.steps)
+              return false;
+            reader.readRow(t++, row);
+            return true;
+          }
+        });
+      reader.close();
+    }
+    catch(IOException e){
+      e.printStackTrace();
+    }
+  }
+
+  /**
+   * Convert a compressed trajectory file to the text format of
+   * printGRNToFile(), appending to the text file.
+   */
+  public static void printCompressedTrajectoryToFile(final String compressedFileName, final String fileName) {
+    try{
+      final CompressedTrajectoryReader reader = new CompressedTrajectoryReader(compressedFileName);
+      printRowsToFile(fileName, reader.nTf, reader.nInputs, reader.nP, new RowSource() {
+          public boolean next(double[] row) {
+            return reader.next(row);
+          }
+        });
+      reader.close();
+    }
+    catch(IOException e){
+      e.printStackTrace();
+    }
+  }
+
+  /**
+   * Append genomes to a multi-genome genes file, as read by
+   * GRNLoader.readGenomes(): eight codons to a line and a blank line
+   * after each genome.
+   */
+  public static void printGenomesToFile(final String fileName, final List<int[]> genomes) {
+    try{
+      BufferedWriter bufferWritter = new BufferedWriter(new FileWriter(fileName, true));
+      for (int[] codons : genomes) {
+        for (int i = 0; i < codons.length; i++) {
+          bufferWritter.write(Integer.toString(codons[i]));
+          bufferWritter.write(i % 8 == 7 || i == codons.length - 1 ? "\n" : " ");
+        }
+        bufferWritter.write("\n");
+      }
+      bufferWritter.close();
+    }
+    catch(IOException e){
+      e.printStackTrace();
+    }
+  }
+
+  /** Rows of a stored trajectory, one at a time */
+  private interface RowSource {
+    boolean next(double[] row);
+  }
+
+  /**
+   * Append rows to a file in the text format of printGRNToFile().
+   */
+  private static void printRowsToFile(final String fileName, int nTf, int nInputs, int nP, RowSource rows)
+    throws IOException {
+    NumberFormat formatter = new DecimalFormat("###.#########");
+    File file =new File(fileName);
+
+    //if file doesnt exists, then create it
+    boolean created = false;
+    if(!file.exists()){
+      file.createNewFile();
+      created = true;
+    }
+
+    //true = append file
+    FileWriter fileWritter = new FileWriter(file, true);
+    BufferedWriter bufferWritter = new BufferedWriter(fileWritter);
+
+    if (created) {
+      for (int i = 0; i < nTf; i++)
+        bufferWritter.write("TF"+i+" ");
+      for (int i = 0; i < nInputs; i++)
+        bufferWritter.write("I"+i+" ");
+      for (int i = 0; i < nP; i++)
+        bufferWritter.write("P"+i+" ");
+      bufferWritter.write("\n");
+    }
+
+    double[] row = new double[nTf + nInputs + nP];
+    while (rows.next(row)) {
+      for (int i = 0; i < row.length; i++)
+        bufferWritter.write(formatter.format(row[i])+" ");
+      bufferWritter.write("\n");
+    }
+    bufferWritter.close();
+    fileWritter.close();
+  }
+
   /**
    *
    */
@@ -91,7 +219,7 @@ public class GRNPrinter {
       System.exit(-1);
     }
 
-    int[][][] cbits = ProteinProducer.cbits;
+    int[][][] cbits = grn.cbits;
     double[] exp    = ProteinProducer.exp;
     double edgeScale = 10.0;
 
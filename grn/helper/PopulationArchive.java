@@ -0,0 +1,369 @@
+package grn.helper;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * An append only archive of chromosomes, for checkpointing populations
+ * between generations.
+ *
+ * Each record holds a chromosome, its fitness and optionally a state,
+ * such as the steady state concentrations returned by
+ * PopulationEvaluator. Records are numbered from 0 in the order they
+ * were appended. An index file next to the archive, fileName.idx,
+ * holds the offset of every record, so any record can be read without
+ * reading those before it. Records are read through memory mapped
+ * windows of the archive.
+ *
+ * Appends write the records and then their offsets, so a checkpoint
+ * cut short leaves the archive as it was before it: records whose
+ * offsets were not written are overwritten by the next append.
+ *
+ * The archive, little endian:
+ *
+ *   int    MAGIC
+ *   int    VERSION
+ *   records, each:
+ *     int    number of codons
+ *     int    number of state values, 0 if none
+ *     double fitness
+ *     int    the codons
+ *     double the state
+ *
+ * The index:
+ *
+ *   int    INDEX_MAGIC
+ *   int    VERSION
+ *   long   offset of each record in the archive
+ */
+public class PopulationArchive implements Closeable {
+
+  /** "GRNP" */
+  public static final int MAGIC = 0x47524E50;
+
+  /** "GRNX" */
+  public static final int INDEX_MAGIC = 0x47524E58;
+
+  /** Format version */
+  public static final int VERSION = 1;
+
+  /** Bytes before the first record, or the first offset */
+  private static final int HEADER_SIZE = 8;
+
+  /** Bytes before the codons of a record */
+  private static final int RECORD_HEADER_SIZE = 16;
+
+  /** Largest size of each mapped window */
+  private static final long WINDOW_SIZE = 1 << 30;
+
+  /** The archive and index files */
+  private final FileChannel channel, indexChannel;
+
+  /** Offset of every record */
+  private long[] offsets;
+
+  /** Number of records */
+  private int size;
+
+  /** Offset after the last record */
+  private long end = HEADER_SIZE;
+
+  /** Mapped windows of the archive, WINDOW_SIZE apart, null until used */
+  private final ArrayList<MappedByteBuffer> windows = new ArrayList<MappedByteBuffer>();
+
+  /**
+   * Opens an archive, creating it if it does not exist.
+   *
+   * @param fileName the archive file
+   * @throws IOException if either file cannot be opened or is not an archive
+   */
+  public PopulationArchive(String fileName) throws IOException {
+    channel = FileChannel.open(Paths.get(fileName), StandardOpenOption.CREATE,
+                               StandardOpenOption.READ, StandardOpenOption.WRITE);
+    indexChannel = FileChannel.open(Paths.get(fileName+".idx"), StandardOpenOption.CREATE,
+                                    StandardOpenOption.READ, StandardOpenOption.WRITE);
+    try {
+      if (channel.size() == 0) {
+        write(channel, header(MAGIC), 0);
+        indexChannel.truncate(0);
+        write(indexChannel, header(INDEX_MAGIC), 0);
+        offsets = new long[16];
+        return;
+      }
+
+      ByteBuffer header = read(channel, 0, HEADER_SIZE);
+      ByteBuffer indexHeader = read(indexChannel, 0, HEADER_SIZE);
+      if (header.getInt(0) != MAGIC || header.getInt(4) != VERSION
+          || indexHeader.getInt(0) != INDEX_MAGIC || indexHeader.getInt(4) != VERSION)
+        throw new IOException(fileName+" is not a version "+VERSION+" population archive");
+
+      /* Keep the records that are indexed and were completely written */
+      long entries = (indexChannel.size() - HEADER_SIZE) / 8;
+      if (entries > Integer.MAX_VALUE)
+        throw new IOException(fileName+" holds too many records");
+      ByteBuffer index = read(indexChannel, HEADER_SIZE, (int)entries * 8);
+      offsets = new long[Math.max(16, (int)entries)];
+      long last = HEADER_SIZE;
+      for (int k = 0; k < entries; k++) {
+        long offset = index.getLong(k * 8);
+        if ((k == 0 ? offset != HEADER_SIZE : offset <= last) || offset + RECORD_HEADER_SIZE > channel.size())
+          break;
+        offsets[size++] = last = offset;
+      }
+      /* Records are contiguous, so only the last needs its length checking */
+      while (size > 0) {
+        ByteBuffer record = read(channel, offsets[size - 1], RECORD_HEADER_SIZE);
+        end = offsets[size - 1] + recordSize(record.getInt(0), record.getInt(4));
+        if (end <= channel.size())
+          break;
+        size--;
+        end = HEADER_SIZE;
+      }
+      if (size < entries)
+        indexChannel.truncate(HEADER_SIZE + (long)size * 8);
+    }
+    catch (IOException e) {
+      close();
+      throw e;
+    }
+  }
+
+  /**
+   * @return number of records
+   */
+  public int size() {
+    return size;
+  }
+
+  /**
+   * Append a record.
+   *
+   * @param codons the chromosome
+   * @param fitness its fitness
+   * @param state its state, or null
+   * @return the number of the record
+   * @throws IOException if the archive cannot be written
+   */
+  public int append(int[] codons, double fitness, double[] state) throws IOException {
+    List<int[]> chromosomes = new ArrayList<int[]>();
+    chromosomes.add(codons);
+    List<double[]> states = new ArrayList<double[]>();
+    states.add(state);
+    return append(chromosomes, new double[] { fitness }, states);
+  }
+
+  /**
+   * Append a population, in a single write to each file.
+   *
+   * @param chromosomes the chromosomes
+   * @param fitness the fitness of each chromosome
+   * @param states the state of each chromosome, any of which may be
+   * null, or null if there are none
+   * @return the number of the first record
+   * @throws IOException if the archive cannot be written
+   */
+  public int append(List<int[]> chromosomes, double[] fitness, List<double[]> states) throws IOException {
+    int count = chromosomes.size();
+    if (fitness.length != count || (states != null && states.size() != count))
+      throw new IllegalArgumentException(count+" chromosomes, "+fitness.length+" fitness values and "
+                                         +(states == null ? 0 : states.size())+" states");
+    long length = 0;
+    for (int k = 0; k < count; k++)
+      length += recordSize(chromosomes.get(k).length, state(states, k).length);
+    if (length > Integer.MAX_VALUE)
+      throw new IllegalArgumentException("Population of "+length+" bytes is too large to append at once");
+
+    ByteBuffer records = ByteBuffer.allocate((int)length).order(ByteOrder.LITTLE_ENDIAN);
+    ByteBuffer index = ByteBuffer.allocate(count * 8).order(ByteOrder.LITTLE_ENDIAN);
+    long offset = end;
+    for (int k = 0; k < count; k++) {
+      int[] codons = chromosomes.get(k);
+      double[] state = state(states, k);
+      index.putLong(offset + records.position());
+      records.putInt(codons.length).putInt(state.length).putDouble(fitness[k]);
+      records.asIntBuffer().put(codons);
+      records.position(records.position() + codons.length * 4);
+      records.asDoubleBuffer().put(state);
+      records.position(records.position() + state.length * 8);
+    }
+    records.flip();
+    index.flip();
+    write(channel, records, end);
+    write(indexChannel, index, HEADER_SIZE + (long)size * 8);
+
+    int first = size;
+    if (size + count > offsets.length) {
+      long[] grown = new long[Math.max(offsets.length * 2, size + count)];
+      System.arraycopy(offsets, 0, grown, 0, size);
+      offsets = grown;
+    }
+    for (int k = 0; k < count; k++)
+      offsets[size++] = index.getLong(k * 8);
+    end += length;
+    return first;
+  }
+
+  /**
+   * Force appended records to the disk, so a checkpoint survives a crash.
+   *
+   * @throws IOException if the archive cannot be written
+   */
+  public void sync() throws IOException {
+    channel.force(false);
+    indexChannel.force(false);
+  }
+
+  /**
+   * @param k number of a record
+   * @return its chromosome
+   */
+  public int[] getCodons(int k) {
+    ByteBuffer record = record(k);
+    int[] codons = new int[record.getInt(0)];
+    record.position(RECORD_HEADER_SIZE);
+    record.asIntBuffer().get(codons);
+    return codons;
+  }
+
+  /**
+   * @param k number of a record
+   * @return its fitness
+   */
+  public double getFitness(int k) {
+    return record(k).getDouble(8);
+  }
+
+  /**
+   * @param k number of a record
+   * @return its state, or null if it has none
+   */
+  public double[] getState(int k) {
+    ByteBuffer record = record(k);
+    if (record.getInt(4) == 0)
+      return null;
+    double[] state = new double[record.getInt(4)];
+    record.position(RECORD_HEADER_SIZE + record.getInt(0) * 4);
+    record.asDoubleBuffer().get(state);
+    return state;
+  }
+
+  /**
+   * @return the fitness of every record, without reading any chromosome
+   */
+  public double[] getFitness() {
+    double[] fitness = new double[size];
+    for (int k = 0; k < size; k++)
+      fitness[k] = getFitness(k);
+    return fitness;
+  }
+
+  /**
+   * @param records numbers of the records to load
+   * @return their chromosomes, in the same order
+   */
+  public List<int[]> getCodons(int[] records) {
+    List<int[]> chromosomes = new ArrayList<int[]>(records.length);
+    for (int k : records)
+      chromosomes.add(getCodons(k));
+    return chromosomes;
+  }
+
+  /**
+   * @param records numbers of the records to load
+   * @return their states, in the same order, null where a record has none
+   */
+  public List<double[]> getStates(int[] records) {
+    List<double[]> states = new ArrayList<double[]>(records.length);
+    for (int k : records)
+      states.add(getState(k));
+    return states;
+  }
+
+  public void close() throws IOException {
+    windows.clear();
+    indexChannel.close();
+    channel.close();
+  }
+
+  /**
+   * @return a little endian view of record k, from its first byte
+   */
+  private ByteBuffer record(int k) {
+    if (k < 0 || k >= size)
+      throw new IndexOutOfBoundsException("Record "+k+" outside "+size+" records");
+    long offset = offsets[k];
+    long next = k + 1 < size ? offsets[k + 1] : end;
+    try {
+      return map(offset, (int)(next - offset));
+    }
+    catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  /**
+   * Map a region of the archive, through its window where the region
+   * lies within one.
+   */
+  private ByteBuffer map(long offset, int length) throws IOException {
+    int w = (int)(offset / WINDOW_SIZE);
+    long start = w * WINDOW_SIZE;
+    ByteBuffer region;
+    if (offset + length > start + WINDOW_SIZE) {
+      region = channel.map(FileChannel.MapMode.READ_ONLY, offset, length);
+    }
+    else {
+      while (windows.size() <= w)
+        windows.add(null);
+      MappedByteBuffer window = windows.get(w);
+      /* Windows mapped before later appends may be too short */
+      if (window == null || start + window.capacity() < offset + length) {
+        window = channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(WINDOW_SIZE, end - start));
+        windows.set(w, window);
+      }
+      region = window.duplicate();
+      region.position((int)(offset - start)).limit((int)(offset - start) + length);
+      region = region.slice();
+    }
+    return region.order(ByteOrder.LITTLE_ENDIAN);
+  }
+
+  private static long recordSize(int codons, int states) {
+    return RECORD_HEADER_SIZE + codons * 4L + states * 8L;
+  }
+
+  private static double[] state(List<double[]> states, int k) {
+    double[] state = states == null ? null : states.get(k);
+    return state == null ? new double[0] : state;
+  }
+
+  private static ByteBuffer header(int magic) {
+    ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+    header.putInt(magic).putInt(VERSION);
+    header.flip();
+    return header;
+  }
+
+  private static ByteBuffer read(FileChannel channel, long at, int length) throws IOException {
+    ByteBuffer buffer = ByteBuffer.allocate(length).order(ByteOrder.LITTLE_ENDIAN);
+    while (buffer.hasRemaining())
+      if (channel.read(buffer, at + buffer.position()) < 0)
+        throw new IOException("Unexpected end of file");
+    return buffer;
+  }
+
+  private static void write(FileChannel channel, ByteBuffer buffer, long at) throws IOException {
+    int written = 0;
+    while (buffer.hasRemaining())
+      written += channel.write(buffer, at + written);
+  }
+}
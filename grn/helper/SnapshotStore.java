@@ -0,0 +1,259 @@
+package grn.helper;
+
+import grn.Grn;
+import grn.Protein;
+import grn.Snapshot;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.HashMap;
+
+/**
+ * A disk-backed store of network snapshots keyed by gene encoding and
+ * input proteins, so a network whose steady state was found by an
+ * earlier run can be restored to it instead of running init():
+ *
+ *   if (!store.restore(grn)) {
+ *     grn.init();
+ *     store.put(grn);
+ *   }
+ *
+ * Snapshots are appended to a single file; a later snapshot of the
+ * same network and inputs replaces an earlier one. The offset of each
+ * key's latest snapshot is held in memory, rebuilt from the record
+ * headers when the store is opened, so a lookup is one read. Keys are
+ * the 64 bit hashes of Snapshot.key() and every record holds its full
+ * encoding, so a hash collision is a miss, never a wrong snapshot. A
+ * record cut short by a crash is dropped when the store is next opened.
+ *
+ * Lookups and appends are synchronised, so a store can be shared
+ * between threads.
+ *
+ * The file, little endian:
+ *
+ *   int    MAGIC
+ *   int    VERSION
+ *   records, each:
+ *     long   key
+ *     int    length of the gene encoding
+ *     int    length of the snapshot in bytes
+ *     int    the gene encoding
+ *     byte   the snapshot, as Snapshot.toBytes()
+ */
+public class SnapshotStore implements Closeable {
+
+  /** "GRNE" */
+  public static final int MAGIC = 0x47524E45;
+
+  /** Format version */
+  public static final int VERSION = 1;
+
+  /** Bytes before the first record */
+  private static final int HEADER_SIZE = 8;
+
+  /** Bytes before the encoding of a record */
+  private static final int RECORD_HEADER_SIZE = 16;
+
+  /** The store file */
+  private final FileChannel channel;
+
+  /** Offset of the latest record of each key */
+  private final HashMap<Long, Long> offsets = new HashMap<Long, Long>();
+
+  /** Offset after the last record */
+  private long end = HEADER_SIZE;
+
+  private long hits, misses;
+
+  /**
+   * Opens a store, creating it if it does not exist.
+   *
+   * @param fileName the store file
+   * @throws IOException if the file cannot be opened or is not a store
+   */
+  public SnapshotStore(String fileName) throws IOException {
+    channel = FileChannel.open(Paths.get(fileName), StandardOpenOption.CREATE,
+                               StandardOpenOption.READ, StandardOpenOption.WRITE);
+    try {
+      if (channel.size() == 0) {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        header.putInt(MAGIC).putInt(VERSION);
+        header.flip();
+        write(header, 0);
+        return;
+      }
+
+      ByteBuffer header = read(0, HEADER_SIZE);
+      if (header.getInt(0) != MAGIC || header.getInt(4) != VERSION)
+        throw new IOException(fileName+" is not a version "+VERSION+" snapshot store");
+
+      /* Index every complete record, dropping any cut short */
+      long size = channel.size();
+      while (end + RECORD_HEADER_SIZE <= size) {
+        ByteBuffer record = read(end, RECORD_HEADER_SIZE);
+        long next = end + RECORD_HEADER_SIZE + record.getInt(8) * 4L + record.getInt(12);
+        if (record.getInt(8) < 0 || record.getInt(12) < 0 || next > size)
+          break;
+        offsets.put(record.getLong(0), end);
+        end = next;
+      }
+      if (end < size)
+        channel.truncate(end);
+    }
+    catch (IOException e) {
+      close();
+      throw e;
+    }
+  }
+
+  /**
+   * @return number of networks and inputs with a snapshot
+   */
+  public synchronized int size() {
+    return offsets.size();
+  }
+
+  /**
+   * Store a snapshot of a network in its current state, normally just
+   * after init().
+   *
+   * @param grn the network
+   * @throws IOException if the store cannot be written
+   */
+  public void put(Grn grn) throws IOException {
+    put(grn.getGRNEncoding(), grn.snapshot());
+  }
+
+  /**
+   * Store a snapshot.
+   *
+   * @param encoding the gene encoding of the snapshot's network, as Grn.getGRNEncoding()
+   * @param snapshot the snapshot
+   * @throws IOException if the store cannot be written
+   */
+  public synchronized void put(int[] encoding, Snapshot snapshot) throws IOException {
+    if (snapshot.fingerprint != Snapshot.fingerprint(encoding))
+      throw new IllegalArgumentException("Snapshot is not of the given encoding");
+    byte[] bytes = snapshot.toBytes();
+    long key = snapshot.key();
+
+    ByteBuffer record = ByteBuffer.allocate(RECORD_HEADER_SIZE + encoding.length * 4 + bytes.length)
+      .order(ByteOrder.LITTLE_ENDIAN);
+    record.putLong(key).putInt(encoding.length).putInt(bytes.length);
+    for (int codon : encoding)
+      record.putInt(codon);
+    record.put(bytes);
+    record.flip();
+    write(record, end);
+    offsets.put(key, end);
+    end += record.capacity();
+  }
+
+  /**
+   * Find the latest snapshot of a network with the given inputs.
+   *
+   * @param encoding the gene encoding of the network, as Grn.getGRNEncoding()
+   * @param inputSignatures signatures of the input proteins
+   * @param inputConcentrations concentrations of the input proteins
+   * @return the snapshot, or null if there is none
+   * @throws IOException if the store cannot be read
+   */
+  public synchronized Snapshot get(int[] encoding, int[] inputSignatures, double[] inputConcentrations)
+    throws IOException {
+    long key = Snapshot.key(Snapshot.fingerprint(encoding), inputSignatures, inputConcentrations);
+    Long offset = offsets.get(key);
+    Snapshot snapshot = null;
+    if (offset != null) {
+      ByteBuffer header = read(offset, RECORD_HEADER_SIZE);
+      ByteBuffer record = read(offset + RECORD_HEADER_SIZE, header.getInt(8) * 4 + header.getInt(12));
+      int[] stored = new int[header.getInt(8)];
+      record.asIntBuffer().get(stored);
+      if (Arrays.equals(stored, encoding)) {
+        byte[] bytes = new byte[header.getInt(12)];
+        record.position(stored.length * 4);
+        record.get(bytes);
+        snapshot = Snapshot.fromBytes(bytes);
+        if (!Arrays.equals(snapshot.getInputSignatures(), inputSignatures)
+            || !Arrays.equals(snapshot.getInputConcentrations(), inputConcentrations))
+          snapshot = null;
+      }
+    }
+    if (snapshot == null)
+      misses++;
+    else
+      hits++;
+    return snapshot;
+  }
+
+  /**
+   * Restore a network to its stored snapshot for its current inputs,
+   * if there is one.
+   *
+   * @param grn the network
+   * @return whether a snapshot was found and restored
+   * @throws IOException if the store cannot be read
+   */
+  public boolean restore(Grn grn) throws IOException {
+    int nTf = grn.tfProteins.length - grn.numberOfInputs;
+    int[] signatures = new int[grn.numberOfInputs];
+    double[] concentrations = new double[grn.numberOfInputs];
+    for (int k = 0; k < grn.numberOfInputs; k++) {
+      Protein p = grn.tfProteins[nTf + k];
+      signatures[k] = p.value;
+      concentrations[k] = p.concentration;
+    }
+    Snapshot snapshot = get(grn.getGRNEncoding(), signatures, concentrations);
+    if (snapshot == null)
+      return false;
+    grn.restore(snapshot);
+    return true;
+  }
+
+  /**
+   * @return number of lookups that found a snapshot
+   */
+  public synchronized long getHits() {
+    return hits;
+  }
+
+  /**
+   * @return number of lookups that found none
+   */
+  public synchronized long getMisses() {
+    return misses;
+  }
+
+  /**
+   * Force stored snapshots to the disk.
+   *
+   * @throws IOException if the store cannot be written
+   */
+  public void sync() throws IOException {
+    channel.force(false);
+  }
+
+  public void close() throws IOException {
+    channel.close();
+  }
+
+  private ByteBuffer read(long at, int length) throws IOException {
+    ByteBuffer buffer = ByteBuffer.allocate(length).order(ByteOrder.LITTLE_ENDIAN);
+    while (buffer.hasRemaining())
+      if (channel.read(buffer, at + buffer.position()) < 0)
+        throw new IOException("Unexpected end of file");
+    buffer.flip();
+    return buffer;
+  }
+
+  private void write(ByteBuffer buffer, long at) throws IOException {
+    int written = 0;
+    while (buffer.hasRemaining())
+      written += channel.write(buffer, at + written);
+  }
+}
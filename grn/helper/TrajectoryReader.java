@@ -0,0 +1,150 @@
+package grn.helper;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Reads a binary trajectory file written by TrajectoryWriter through
+ * memory mapped windows. The whole file is mapped when opened; reads
+ * go straight to the mapping without copying the file.
+ */
+public class TrajectoryReader implements Closeable {
+
+  /** Largest size of each mapped window */
+  private static final int WINDOW_SIZE = 1 << 30;
+
+  /** Number of TF proteins, excluding inputs */
+  public final int nTf;
+
+  /** Number of input TF proteins */
+  public final int nInputs;
+
+  /** Number of P proteins */
+  public final int nP;
+
+  /** Number of rows */
+  public final long steps;
+
+  /** The file being read */
+  private final FileChannel channel;
+
+  /** The header, then the rows in windows of rowsPerWindow */
+  private final MappedByteBuffer header;
+  private final MappedByteBuffer[] windows;
+  private final long rowsPerWindow;
+
+  /**
+   * @param fileName the file to read
+   * @throws IOException if the file cannot be read or is not a trajectory file
+   */
+  public TrajectoryReader(String fileName) throws IOException {
+    channel = FileChannel.open(Paths.get(fileName), StandardOpenOption.READ);
+    if (channel.size() < TrajectoryWriter.HEADER_SIZE) {
+      channel.close();
+      throw new IOException(fileName+" is not a trajectory file");
+    }
+    header = channel.map(FileChannel.MapMode.READ_ONLY, 0, TrajectoryWriter.HEADER_SIZE);
+    header.order(ByteOrder.LITTLE_ENDIAN);
+    if (header.getInt(0) != TrajectoryWriter.MAGIC || header.getInt(4) != TrajectoryWriter.VERSION) {
+      channel.close();
+      throw new IOException(fileName+" is not a version "+TrajectoryWriter.VERSION+" trajectory file");
+    }
+    nTf = header.getInt(8);
+    nInputs = header.getInt(12);
+    nP = header.getInt(16);
+
+    /* Rows past the end of the file belong to a run that never ended */
+    int rowSize = width() * 8;
+    long rows = header.getLong(TrajectoryWriter.STEPS_OFFSET);
+    if (rowSize > 0)
+      rows = Math.min(rows, (channel.size() - TrajectoryWriter.HEADER_SIZE) / rowSize);
+    steps = rows;
+
+    rowsPerWindow = rowSize == 0 ? 1 : Math.max(1, WINDOW_SIZE / rowSize);
+    windows = new MappedByteBuffer[rowSize == 0 ? 0 : (int)((steps + rowsPerWindow - 1) / rowsPerWindow)];
+    for (int w = 0; w < windows.length; w++) {
+      long first = w * rowsPerWindow;
+      long length = Math.min(rowsPerWindow, steps - first) * rowSize;
+      windows[w] = channel.map(FileChannel.MapMode.READ_ONLY, TrajectoryWriter.HEADER_SIZE + first * rowSize, length);
+      windows[w].order(ByteOrder.LITTLE_ENDIAN);
+    }
+  }
+
+  /**
+   * @return number of proteins per row
+   */
+  public int width() {
+    return nTf + nInputs + nP;
+  }
+
+  /**
+   * @param t the row
+   * @param protein index of a protein, laid out as a row of Grn.results
+   * @return the protein's concentration at the row
+   */
+  public double get(long t, int protein) {
+    if (t < 0 || t >= steps || protein < 0 || protein >= width())
+      throw new IndexOutOfBoundsException("Row "+t+", protein "+protein+" outside "+steps+" x "+width());
+    return windows[(int)(t / rowsPerWindow)].getDouble((int)((t % rowsPerWindow) * width() + protein) * 8);
+  }
+
+  /**
+   * Copy a row into an array.
+   *
+   * @param t the row
+   * @param row array of at least width() concentrations to fill
+   */
+  public void readRow(long t, double[] row) {
+    if (t < 0 || t >= steps)
+      throw new IndexOutOfBoundsException("Row "+t+" outside "+steps+" rows");
+    MappedByteBuffer w = windows[(int)(t / rowsPerWindow)];
+    int offset = (int)((t % rowsPerWindow) * width()) * 8;
+    for (int i = 0; i < width(); i++)
+      row[i] = w.getDouble(offset + i * 8);
+  }
+
+  /**
+   * @param protein index of a protein, laid out as a row of Grn.results
+   * @return the protein's concentration at every row
+   */
+  public double[] column(int protein) {
+    double[] column = new double[checkedRows()];
+    for (int t = 0; t < column.length; t++)
+      column[t] = get(t, protein);
+    return column;
+  }
+
+  /**
+   * @return every row, as Grn.results
+   */
+  public double[][] readAll() {
+    double[][] results = new double[checkedRows()][width()];
+    for (int t = 0; t < results.length; t++)
+      readRow(t, results[t]);
+    return results;
+  }
+
+  public void close() throws IOException {
+    channel.close();
+  }
+
+  private int checkedRows() {
+    if (steps > Integer.MAX_VALUE)
+      throw new IllegalStateException(steps+" rows do not fit in an array");
+    return (int)steps;
+  }
+
+  /**
+   * Converts a binary trajectory file to the text format of GRNPrinter.
+   *
+   * @param args the binary file, then the text file to append to
+   */
+  public static void main(String[] args) {
+    GRNPrinter.printTrajectoryToFile(args[0], args[1]);
+  }
+}
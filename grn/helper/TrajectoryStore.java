@@ -0,0 +1,393 @@
+package grn.helper;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+
+/**
+ * Random access queries over a binary trajectory file written by
+ * TrajectoryWriter.
+ *
+ * The rows are split into blocks of a fixed number of time steps, and
+ * the minimum, maximum and mean of every protein in every block are
+ * kept in an index file next to the trajectory, fileName.idx. The
+ * index is built on first use. It is current while the trajectory's
+ * size and modification time are those it was built from. When they
+ * are not, but the last row indexed is unchanged, the trajectory is
+ * taken to have had runs appended and the index is extended from its
+ * last full block; otherwise it is rebuilt. Queries over a range of
+ * steps read only the rows in the range, and threshold queries only
+ * the blocks whose summaries show they can match; both read the
+ * trajectory through its mapping.
+ *
+ * The index file, little endian:
+ *
+ *   int    MAGIC
+ *   int    VERSION
+ *   int    rows per block
+ *   int    number of proteins per row
+ *   long   number of rows indexed
+ *   long   size of the trajectory file indexed, in bytes
+ *   long   modification time of the trajectory file indexed, in milliseconds
+ *   long   CRC-32 of the last row indexed, 0 if none
+ *   double blocks x proteins x (min, max, mean)
+ */
+public class TrajectoryStore implements Closeable {
+
+  /** "GRNI" */
+  public static final int MAGIC = 0x47524E49;
+
+  /** Format version */
+  public static final int VERSION = 2;
+
+  /** Default number of rows per block */
+  public static final int BLOCK_ROWS = 1024;
+
+  /** Bytes before the first block summary */
+  private static final int HEADER_SIZE = 48;
+
+  /** The trajectory */
+  private final TrajectoryReader data;
+
+  /** Rows per block */
+  public final int blockRows;
+
+  /** Number of blocks, the last possibly short */
+  public final long blocks;
+
+  /** The index, mapped */
+  private final MappedByteBuffer index;
+
+  /** The index file */
+  private final FileChannel indexChannel;
+
+  /** Number of concentrations read from the trajectory by queries */
+  private long valuesRead;
+
+  /**
+   * Opens a trajectory with blocks of BLOCK_ROWS rows.
+   *
+   * @param fileName the trajectory file
+   * @throws IOException if either file cannot be read or written
+   */
+  public TrajectoryStore(String fileName) throws IOException {
+    this(fileName, BLOCK_ROWS);
+  }
+
+  /**
+   * @param fileName the trajectory file
+   * @param blockRows number of rows per block, if the index has to be built
+   * @throws IOException if either file cannot be read or written
+   */
+  public TrajectoryStore(String fileName, int blockRows) throws IOException {
+    if (blockRows < 1)
+      throw new IllegalArgumentException("Blocks need at least one row: "+blockRows);
+    Path file = Paths.get(fileName);
+    data = new TrajectoryReader(fileName);
+    int width = data.width();
+    long size = Files.size(file), modified = Files.getLastModifiedTime(file).toMillis();
+
+    indexChannel = FileChannel.open(Paths.get(fileName+".idx"), StandardOpenOption.CREATE,
+                                    StandardOpenOption.READ, StandardOpenOption.WRITE);
+    ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+    while (header.hasRemaining())
+      if (indexChannel.read(header, header.position()) < 0)
+        break;
+    boolean valid = header.position() == HEADER_SIZE && header.getInt(0) == MAGIC
+      && header.getInt(4) == VERSION && header.getInt(8) > 0 && header.getInt(12) == width;
+    long indexed = valid ? header.getLong(16) : -1;
+    if (valid && indexed == data.steps && header.getLong(24) == size && header.getLong(32) == modified) {
+      blockRows = header.getInt(8);
+    }
+    else if (valid && indexed >= 0 && indexed <= data.steps && header.getLong(40) == checksum(indexed)) {
+      /* Runs appended: the full blocks indexed still stand */
+      blockRows = header.getInt(8);
+      build(blockRows, indexed / blockRows, size, modified);
+    }
+    else {
+      build(blockRows, 0, size, modified);
+    }
+
+    this.blockRows = blockRows;
+    blocks = (data.steps + blockRows - 1) / blockRows;
+    index = indexChannel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_SIZE + blocks * width * 24);
+    index.order(ByteOrder.LITTLE_ENDIAN);
+  }
+
+  /**
+   * Summarise the blocks of the trajectory from a block on into the
+   * index file, keeping the summaries before it. The header is written
+   * last, so an index left part built is extended or rebuilt when next
+   * opened.
+   */
+  private void build(int blockRows, long fromBlock, long size, long modified) throws IOException {
+    int width = data.width();
+    long position = HEADER_SIZE + fromBlock * width * 24;
+    indexChannel.truncate(fromBlock == 0 ? 0 : position);
+
+    double[] row = new double[width];
+    double[] min = new double[width], max = new double[width], sum = new double[width];
+    ByteBuffer summary = ByteBuffer.allocate(width * 24).order(ByteOrder.LITTLE_ENDIAN);
+    for (long first = fromBlock * blockRows; first < data.steps; first += blockRows) {
+      int rows = (int)Math.min(blockRows, data.steps - first);
+      Arrays.fill(min, Double.POSITIVE_INFINITY);
+      Arrays.fill(max, Double.NEGATIVE_INFINITY);
+      Arrays.fill(sum, 0.0);
+      for (int r = 0; r < rows; r++) {
+        data.readRow(first + r, row);
+        for (int i = 0; i < width; i++) {
+          min[i] = Math.min(min[i], row[i]);
+          max[i] = Math.max(max[i], row[i]);
+          sum[i] += row[i];
+        }
+      }
+
+      summary.clear();
+      for (int i = 0; i < width; i++)
+        summary.putDouble(min[i]).putDouble(max[i]).putDouble(sum[i] / rows);
+      summary.flip();
+      position += write(summary, position);
+    }
+
+    ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+    header.putInt(MAGIC).putInt(VERSION).putInt(blockRows).putInt(width).putLong(data.steps)
+      .putLong(size).putLong(modified).putLong(checksum(data.steps));
+    header.flip();
+    write(header, 0);
+  }
+
+  /**
+   * @return CRC-32 of the row before row rows, 0 if rows is 0
+   */
+  private long checksum(long rows) {
+    if (rows == 0)
+      return 0;
+    double[] row = new double[data.width()];
+    data.readRow(rows - 1, row);
+    ByteBuffer bytes = ByteBuffer.allocate(row.length * 8).order(ByteOrder.LITTLE_ENDIAN);
+    for (double c : row)
+      bytes.putDouble(c);
+    bytes.flip();
+    CRC32 crc = new CRC32();
+    crc.update(bytes);
+    return crc.getValue();
+  }
+
+  /**
+   * @return number of rows
+   */
+  public long getSteps() {
+    return data.steps;
+  }
+
+  /**
+   * @return number of proteins per row
+   */
+  public int width() {
+    return data.width();
+  }
+
+  /**
+   * @return the trajectory, for reads the store does not offer
+   */
+  public TrajectoryReader getReader() {
+    return data;
+  }
+
+  /**
+   * @param block index of a block
+   * @param protein index of a protein, laid out as a row of Grn.results
+   * @return the protein's least concentration over the block
+   */
+  public double blockMin(long block, int protein) {
+    return summary(block, protein, 0);
+  }
+
+  /**
+   * @param block index of a block
+   * @param protein index of a protein, laid out as a row of Grn.results
+   * @return the protein's greatest concentration over the block
+   */
+  public double blockMax(long block, int protein) {
+    return summary(block, protein, 1);
+  }
+
+  /**
+   * @param block index of a block
+   * @param protein index of a protein, laid out as a row of Grn.results
+   * @return the protein's mean concentration over the block
+   */
+  public double blockMean(long block, int protein) {
+    return summary(block, protein, 2);
+  }
+
+  private double summary(long block, int protein, int field) {
+    if (block < 0 || block >= blocks || protein < 0 || protein >= width())
+      throw new IndexOutOfBoundsException("Block "+block+", protein "+protein+" outside "+blocks+" x "+width());
+    return index.getDouble((int)(HEADER_SIZE + ((block * width() + protein) * 3 + field) * 8));
+  }
+
+  /**
+   * @param protein index of a protein, laid out as a row of Grn.results
+   * @param from first step
+   * @param to step after the last
+   * @return the protein's concentrations over the steps
+   */
+  public double[] range(int protein, long from, long to) {
+    checkRange(from, to);
+    double[] values = new double[(int)(to - from)];
+    for (int t = 0; t < values.length; t++)
+      values[t] = data.get(from + t, protein);
+    valuesRead += values.length;
+    return values;
+  }
+
+  /**
+   * @param protein index of a protein, laid out as a row of Grn.results
+   * @param from first step
+   * @param to step after the last, greater than from
+   * @return the protein's least concentration over the steps
+   */
+  public double min(int protein, long from, long to) {
+    return aggregate(protein, from, to, 0);
+  }
+
+  /**
+   * @param protein index of a protein, laid out as a row of Grn.results
+   * @param from first step
+   * @param to step after the last, greater than from
+   * @return the protein's greatest concentration over the steps
+   */
+  public double max(int protein, long from, long to) {
+    return aggregate(protein, from, to, 1);
+  }
+
+  /**
+   * @param protein index of a protein, laid out as a row of Grn.results
+   * @param from first step
+   * @param to step after the last, greater than from
+   * @return the protein's mean concentration over the steps
+   */
+  public double mean(int protein, long from, long to) {
+    return aggregate(protein, from, to, 2) / (to - from);
+  }
+
+  /**
+   * Min, max or sum over a range, from the summaries of the blocks it
+   * covers and the rows of the blocks it only partly covers.
+   */
+  private double aggregate(int protein, long from, long to, int field) {
+    checkRange(from, to);
+    if (from == to)
+      throw new IllegalArgumentException("Empty range: "+from);
+    double result = field == 0 ? Double.POSITIVE_INFINITY : field == 1 ? Double.NEGATIVE_INFINITY : 0.0;
+    long t = from;
+    while (t < to) {
+      long block = t / blockRows;
+      long start = block * blockRows;
+      long end = Math.min(start + blockRows, data.steps);
+      double value;
+      if (t == start && end <= to) {
+        value = summary(block, protein, field);
+        if (field == 2)
+          value *= end - start;
+        t = end;
+      }
+      else {
+        long stop = Math.min(end, to);
+        value = field == 0 ? Double.POSITIVE_INFINITY : field == 1 ? Double.NEGATIVE_INFINITY : 0.0;
+        for (; t < stop; t++) {
+          double c = data.get(t, protein);
+          value = field == 0 ? Math.min(value, c) : field == 1 ? Math.max(value, c) : value + c;
+        }
+        valuesRead += stop - Math.max(from, start);
+      }
+      result = field == 0 ? Math.min(result, value) : field == 1 ? Math.max(result, value) : result + value;
+    }
+    return result;
+  }
+
+  /**
+   * @param protein index of a protein, laid out as a row of Grn.results
+   * @param threshold the concentration to exceed
+   * @return the steps, ascending, at which the protein's concentration
+   * is greater than threshold
+   */
+  public long[] stepsAbove(int protein, double threshold) {
+    return stepsWhere(protein, threshold, true);
+  }
+
+  /**
+   * @param protein index of a protein, laid out as a row of Grn.results
+   * @param threshold the concentration to fall below
+   * @return the steps, ascending, at which the protein's concentration
+   * is less than threshold
+   */
+  public long[] stepsBelow(int protein, double threshold) {
+    return stepsWhere(protein, threshold, false);
+  }
+
+  private long[] stepsWhere(int protein, double threshold, boolean above) {
+    long[] steps = new long[16];
+    int found = 0;
+    for (long block = 0; block < blocks; block++) {
+      /* Skip blocks that cannot match, take whole blocks that all match */
+      double min = blockMin(block, protein), max = blockMax(block, protein);
+      if (above ? max <= threshold : min >= threshold)
+        continue;
+      long start = block * blockRows;
+      long end = Math.min(start + blockRows, data.steps);
+      boolean all = above ? min > threshold : max < threshold;
+
+      for (long t = start; t < end; t++) {
+        if (!all) {
+          double c = data.get(t, protein);
+          if (above ? c <= threshold : c >= threshold)
+            continue;
+        }
+        if (found == steps.length)
+          steps = Arrays.copyOf(steps, steps.length * 2);
+        steps[found++] = t;
+      }
+      if (!all)
+        valuesRead += end - start;
+    }
+    return Arrays.copyOf(steps, found);
+  }
+
+  /**
+   * @return number of concentrations read from the trajectory by
+   * queries, rather than answered from the index
+   */
+  public long getValuesRead() {
+    return valuesRead;
+  }
+
+  public void close() throws IOException {
+    indexChannel.close();
+    data.close();
+  }
+
+  private void checkRange(long from, long to) {
+    if (from < 0 || to > data.steps || from > to)
+      throw new IndexOutOfBoundsException("Steps "+from+" to "+to+" outside "+data.steps+" rows");
+    if (to - from > Integer.MAX_VALUE)
+      throw new IllegalArgumentException((to - from)+" steps do not fit in an array");
+  }
+
+  private int write(ByteBuffer buffer, long at) throws IOException {
+    int written = 0;
+    while (buffer.hasRemaining())
+      written += indexChannel.write(buffer, at + written);
+    return written;
+  }
+}
@@ -0,0 +1,172 @@
+package grn.helper;
+
+import grn.sink.TrajectorySink;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Writes trajectories to a binary file through memory mapped windows,
+ * as a sink. Like GRNPrinter.printGRNToFile() it appends to an
+ * existing file, so several runs of the same network can share one.
+ *
+ * The file is a fixed size header followed by the rows of every run,
+ * each row laid out as a row of Grn.results. All values are little
+ * endian.
+ *
+ *   int    MAGIC
+ *   int    VERSION
+ *   int    number of TF proteins, excluding inputs
+ *   int    number of input TF proteins
+ *   int    number of P proteins
+ *   int    unused
+ *   long   number of rows
+ *   double rows x proteins concentrations
+ *
+ * The row count is updated at the end of each run. Rows are the unit
+ * the simulation produces, so the data is stored row-major; a
+ * protein's column is read back with TrajectoryReader.column().
+ */
+public class TrajectoryWriter implements TrajectorySink, Closeable {
+
+  /** "GRNT" */
+  public static final int MAGIC = 0x47524E54;
+
+  /** Format version */
+  public static final int VERSION = 1;
+
+  /** Bytes before the first row */
+  public static final int HEADER_SIZE = 32;
+
+  /** Offset of the row count in the header */
+  static final int STEPS_OFFSET = 24;
+
+  /** Approximate size of each mapped window */
+  private static final int WINDOW_SIZE = 1 << 24;
+
+  /** The file being written */
+  private final FileChannel channel;
+
+  /** Number of TF, input and P proteins, -1 until known */
+  private int nTf = -1, nInputs = -1, nP = -1;
+
+  /** Bytes per row */
+  private int rowSize;
+
+  /** Rows in the file */
+  private long steps;
+
+  /** The mapped window rows are written to */
+  private MappedByteBuffer window;
+
+  /**
+   * Opens a trajectory file for appending, creating it if it does not exist.
+   *
+   * @param fileName the file to write
+   * @throws IOException if the file cannot be opened or is not a trajectory file
+   */
+  public TrajectoryWriter(String fileName) throws IOException {
+    channel = FileChannel.open(Paths.get(fileName), StandardOpenOption.CREATE,
+                               StandardOpenOption.READ, StandardOpenOption.WRITE);
+    if (channel.size() == 0)
+      return;
+
+    ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+    while (header.hasRemaining())
+      if (channel.read(header, header.position()) < 0)
+        break;
+    header.flip();
+    if (header.remaining() < HEADER_SIZE || header.getInt(0) != MAGIC || header.getInt(4) != VERSION) {
+      channel.close();
+      throw new IOException(fileName+" is not a version "+VERSION+" trajectory file");
+    }
+    nTf = header.getInt(8);
+    nInputs = header.getInt(12);
+    nP = header.getInt(16);
+    steps = header.getLong(STEPS_OFFSET);
+    rowSize = (nTf + nInputs + nP) * 8;
+  }
+
+  public void begin(int nTf, int nInputs, int nP, int timeSteps) {
+    if (this.nTf < 0) {
+      this.nTf = nTf;
+      this.nInputs = nInputs;
+      this.nP = nP;
+      rowSize = (nTf + nInputs + nP) * 8;
+      ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+      header.putInt(MAGIC).putInt(VERSION).putInt(nTf).putInt(nInputs).putInt(nP).putInt(0).putLong(0);
+      header.flip();
+      write(header, 0);
+    }
+    else if (this.nTf != nTf || this.nInputs != nInputs || this.nP != nP) {
+      throw new IllegalArgumentException("Trajectory file holds "+this.nTf+"/"+this.nInputs+"/"+this.nP
+                                         +" TF/input/P proteins, not "+nTf+"/"+nInputs+"/"+nP);
+    }
+  }
+
+  public void record(int t, double[] row) {
+    if (rowSize == 0) {
+      steps++;
+      return;
+    }
+    if (window == null || !window.hasRemaining())
+      map();
+    for (int i = 0; i < row.length; i++)
+      window.putDouble(row[i]);
+    steps++;
+  }
+
+  public void end(int lastStep) {
+    ByteBuffer count = ByteBuffer.allocate(8).order(ByteOrder.LITTLE_ENDIAN);
+    count.putLong(0, steps);
+    write(count, STEPS_OFFSET);
+  }
+
+  /**
+   * @return number of rows in the file
+   */
+  public long getSteps() {
+    return steps;
+  }
+
+  /**
+   * Trim the file to the rows written and close it.
+   */
+  public void close() throws IOException {
+    window = null;
+    if (nTf >= 0)
+      channel.truncate(HEADER_SIZE + steps * rowSize);
+    channel.close();
+  }
+
+  /**
+   * Map the window starting at the next row.
+   */
+  private void map() {
+    long rows = Math.max(1, WINDOW_SIZE / rowSize);
+    try {
+      window = channel.map(FileChannel.MapMode.READ_WRITE, HEADER_SIZE + steps * rowSize, rows * rowSize);
+      window.order(ByteOrder.LITTLE_ENDIAN);
+    }
+    catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  private void write(ByteBuffer buffer, long position) {
+    try {
+      while (buffer.hasRemaining())
+        position += channel.write(buffer, position);
+    }
+    catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+}
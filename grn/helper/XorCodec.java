@@ -0,0 +1,201 @@
+package grn.helper;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Gorilla style XOR compression of a series of doubles, as used for
+ * each protein column of a compressed trajectory.
+ *
+ * The first value is stored in full. Each later value is XORed with
+ * its predecessor: an unchanged value costs a single 0 bit. Otherwise
+ * only the meaningful bits of the XOR are stored, between its leading
+ * and trailing zeros, either inside the window of the previous
+ * meaningful bits (control bits 10) or with a new window described by
+ * 5 bits of leading zeros and 6 bits of length (control bits 11). A
+ * protein at rest therefore costs a bit per step, and one converging
+ * on its steady state little more than the bits still changing.
+ *
+ * Bits are packed most significant first into big endian words.
+ */
+public final class XorCodec {
+
+  /** Packed bits of the last encoded series */
+  private long[] words = new long[16];
+
+  /** Number of complete words, and bits used of the next */
+  private int nWords, used;
+
+  /** The word being filled */
+  private long current;
+
+  /**
+   * Encode a strided series of values, replacing the last series.
+   *
+   * @param data the values
+   * @param offset index of the first value
+   * @param stride distance between values
+   * @param count number of values
+   * @return the encoded length in bytes
+   */
+  public int encode(double[] data, int offset, int stride, int count) {
+    nWords = 0;
+    used = 0;
+    current = 0;
+    if (count == 0)
+      return 0;
+
+    long prev = Double.doubleToRawLongBits(data[offset]);
+    write(prev, 64);
+    int prevLeading = -1, prevTrailing = 0;
+    for (int i = 1; i < count; i++) {
+      long bits = Double.doubleToRawLongBits(data[offset + i * stride]);
+      long xor = bits ^ prev;
+      prev = bits;
+      if (xor == 0) {
+        write(0, 1);
+        continue;
+      }
+
+      int leading = Math.min(Long.numberOfLeadingZeros(xor), 31);
+      int trailing = Long.numberOfTrailingZeros(xor);
+      if (prevLeading >= 0 && leading >= prevLeading && trailing >= prevTrailing) {
+        write(2, 2);
+        write(xor >>> prevTrailing, 64 - prevLeading - prevTrailing);
+      }
+      else {
+        int length = 64 - leading - trailing;
+        write(3, 2);
+        write(leading, 5);
+        write(length & 63, 6);
+        write(xor >>> trailing, length);
+        prevLeading = leading;
+        prevTrailing = trailing;
+      }
+    }
+    return length();
+  }
+
+  /**
+   * @param count number of values
+   * @return the largest encoded length of a series of count values, in bytes
+   */
+  public static int maxLength(int count) {
+    return count == 0 ? 0 : 8 + ((count - 1) * 77 + 7) / 8;
+  }
+
+  /**
+   * @return the length of the last encoded series in bytes
+   */
+  public int length() {
+    return nWords * 8 + (used + 7) / 8;
+  }
+
+  /**
+   * Copy the last encoded series into a buffer at its position.
+   *
+   * @param out buffer with at least length() bytes remaining
+   */
+  public void copyTo(ByteBuffer out) {
+    ByteOrder order = out.order();
+    out.order(ByteOrder.BIG_ENDIAN);
+    for (int w = 0; w < nWords; w++)
+      out.putLong(words[w]);
+    for (int b = 0; b < (used + 7) / 8; b++)
+      out.put((byte)(current >>> (56 - 8 * b)));
+    out.order(order);
+  }
+
+  private void write(long bits, int count) {
+    if (count == 0)
+      return;
+    if (count < 64)
+      bits &= (1L << count) - 1;
+    int free = 64 - used;
+    if (count < free) {
+      current |= bits << (free - count);
+      used += count;
+      return;
+    }
+    current |= bits >>> (count - free);
+    flushWord();
+    used = count - free;
+    current = used == 0 ? 0 : bits << (64 - used);
+  }
+
+  private void flushWord() {
+    if (nWords == words.length) {
+      long[] grown = new long[words.length * 2];
+      System.arraycopy(words, 0, grown, 0, nWords);
+      words = grown;
+    }
+    words[nWords++] = current;
+    current = 0;
+  }
+
+  /**
+   * Decode a series encoded by encode().
+   *
+   * @param in buffer holding the series at its position, which is advanced past it
+   * @param length the encoded length in bytes
+   * @param data array to write the values to
+   * @param offset index of the first value
+   * @param stride distance between values
+   * @param count number of values
+   */
+  public static void decode(ByteBuffer in, int length, double[] data, int offset, int stride, int count) {
+    if (count == 0) {
+      in.position(in.position() + length);
+      return;
+    }
+    Bits bits = new Bits(in, length);
+
+    long prev = bits.read(64);
+    data[offset] = Double.longBitsToDouble(prev);
+    int leading = 0, trailing = 0;
+    for (int i = 1; i < count; i++) {
+      if (bits.read(1) != 0) {
+        if (bits.read(1) != 0) {
+          leading = (int)bits.read(5);
+          int meaningful = (int)bits.read(6);
+          if (meaningful == 0)
+            meaningful = 64;
+          trailing = 64 - leading - meaningful;
+        }
+        prev ^= bits.read(64 - leading - trailing) << trailing;
+      }
+      data[offset + i * stride] = Double.longBitsToDouble(prev);
+    }
+  }
+
+  /**
+   * Reads bits most significant first from an encoded series.
+   */
+  private static class Bits {
+    private final long[] words;
+    private int position;
+
+    Bits(ByteBuffer in, int length) {
+      words = new long[(length + 7) / 8 + 1];
+      ByteOrder order = in.order();
+      in.order(ByteOrder.BIG_ENDIAN);
+      int w = 0;
+      for (; (w + 1) * 8 <= length; w++)
+        words[w] = in.getLong();
+      for (int b = 0; b < length - w * 8; b++)
+        words[w] |= (in.get() & 0xFFL) << (56 - 8 * b);
+      in.order(order);
+    }
+
+    long read(int count) {
+      if (count == 0)
+        return 0;
+      int w = position >>> 6, o = position & 63;
+      long v = words[w] << o;
+      if (o > 0 && o + count > 64)
+        v |= words[w + 1] >>> (64 - o);
+      position += count;
+      return count == 64 ? v : v >>> (64 - count);
+    }
+  }
+}
@@ -0,0 +1,135 @@
+package grn.metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * Metrics emitted as JDK Flight Recorder events, under the GRN
+ * category: grn.NetworkBuilt, grn.TablesBuilt and grn.Run. Events are
+ * only created while a recording has them enabled, e.g.
+ *
+ *   java -XX:StartFlightRecording:filename=grn.jfr ...
+ *
+ * An event's time is that measured by the model, not the JFR duration.
+ */
+public class JfrMetrics implements Metrics {
+
+  public void networkBuilt(int tfGenes, int pGenes, int inputs, int umax, long nanos) {
+    NetworkBuilt e = new NetworkBuilt();
+    if (!e.isEnabled())
+      return;
+    e.tfGenes = tfGenes;
+    e.pGenes = pGenes;
+    e.inputs = inputs;
+    e.umax = umax;
+    e.time = nanos;
+    e.commit();
+  }
+
+  public void tablesBuilt(int genes, int proteins, int umax, boolean full, long nanos) {
+    TablesBuilt e = new TablesBuilt();
+    if (!e.isEnabled())
+      return;
+    e.genes = genes;
+    e.proteins = proteins;
+    e.umax = umax;
+    e.full = full;
+    e.time = nanos;
+    e.commit();
+  }
+
+  public void ran(int genes, int proteins, int steps, boolean initialising, boolean atRest, long nanos) {
+    Run e = new Run();
+    if (!e.isEnabled())
+      return;
+    e.genes = genes;
+    e.proteins = proteins;
+    e.steps = steps;
+    e.initialising = initialising;
+    e.atRest = atRest;
+    e.time = nanos;
+    e.nanosPerStep = steps == 0 ? 0 : nanos / steps;
+    e.commit();
+  }
+
+  @Name("grn.NetworkBuilt")
+  @Label("Network Built")
+  @Category("GRN")
+  @Description("A network was built from a genome")
+  @StackTrace(false)
+  static class NetworkBuilt extends Event {
+    @Label("TF Genes")
+    int tfGenes;
+
+    @Label("P Genes")
+    int pGenes;
+
+    @Label("Inputs")
+    int inputs;
+
+    @Label("umax")
+    int umax;
+
+    @Label("Time")
+    @Timespan(Timespan.NANOSECONDS)
+    long time;
+  }
+
+  @Name("grn.TablesBuilt")
+  @Label("Tables Built")
+  @Category("GRN")
+  @Description("A network's lookup table and weights were built, in full or in part")
+  @StackTrace(false)
+  static class TablesBuilt extends Event {
+    @Label("Genes")
+    int genes;
+
+    @Label("Proteins")
+    int proteins;
+
+    @Label("umax")
+    int umax;
+
+    @Label("Full")
+    boolean full;
+
+    @Label("Time")
+    @Timespan(Timespan.NANOSECONDS)
+    long time;
+  }
+
+  @Name("grn.Run")
+  @Label("Run")
+  @Category("GRN")
+  @Description("A network was run")
+  @StackTrace(false)
+  static class Run extends Event {
+    @Label("Genes")
+    int genes;
+
+    @Label("Proteins")
+    int proteins;
+
+    @Label("Steps")
+    int steps;
+
+    @Label("Initialising")
+    boolean initialising;
+
+    @Label("At Rest")
+    boolean atRest;
+
+    @Label("Time")
+    @Timespan(Timespan.NANOSECONDS)
+    long time;
+
+    @Label("Time per Step")
+    @Timespan(Timespan.NANOSECONDS)
+    long nanosPerStep;
+  }
+}
@@ -0,0 +1,60 @@
+package grn.metrics;
+
+/**
+ * Receives measurements of network construction and simulation.
+ *
+ * The model reports to the metrics set with Grn.setMetrics(), by
+ * default NONE. Nothing is measured while NONE is set: the clock is
+ * only read when some other metrics are, and never per time step.
+ * Callbacks may come from many threads at once.
+ */
+public interface Metrics {
+
+  /** Discards every measurement; the model skips measuring altogether */
+  Metrics NONE = new Metrics() {
+      public void networkBuilt(int tfGenes, int pGenes, int inputs, int umax, long nanos) {
+      }
+
+      public void tablesBuilt(int genes, int proteins, int umax, boolean full, long nanos) {
+      }
+
+      public void ran(int genes, int proteins, int steps, boolean initialising, boolean atRest, long nanos) {
+      }
+    };
+
+  /**
+   * A network was built from a genome.
+   *
+   * @param tfGenes number of TF genes found
+   * @param pGenes number of P genes found
+   * @param inputs number of input proteins
+   * @param umax the network's greatest degree of matching
+   * @param nanos time taken to scan, express and build tables
+   */
+  void networkBuilt(int tfGenes, int pGenes, int inputs, int umax, long nanos);
+
+  /**
+   * A network's lookup table and weights were built.
+   *
+   * @param genes number of genes, the rows of the table
+   * @param proteins number of TF proteins including inputs, the columns
+   * @param umax the greatest degree of matching
+   * @param full whether the whole table was calculated, rather than
+   * only the input columns or the rows and columns of new genes
+   * @param nanos time taken
+   */
+  void tablesBuilt(int genes, int proteins, int umax, boolean full, long nanos);
+
+  /**
+   * A network was run.
+   *
+   * @param genes number of genes
+   * @param proteins number of proteins including inputs
+   * @param steps number of time steps executed
+   * @param initialising whether the run was to stop at rest
+   * @param atRest whether an initialising run came to rest, rather
+   * than running for the whole period
+   * @param nanos time taken
+   */
+  void ran(int genes, int proteins, int steps, boolean initialising, boolean atRest, long nanos);
+}
@@ -0,0 +1,196 @@
+package grn.metrics;
+
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongBinaryOperator;
+
+/**
+ * Metrics kept as running totals, cheap to update from many threads.
+ */
+public class MetricsCounter implements Metrics {
+
+  private static final LongBinaryOperator MAX = new LongBinaryOperator() {
+      public long applyAsLong(long a, long b) {
+        return Math.max(a, b);
+      }
+    };
+
+  private final LongAdder networks = new LongAdder();
+  private final LongAdder genes = new LongAdder();
+  private final LongAccumulator maxGenes = new LongAccumulator(MAX, 0);
+  private final LongAccumulator maxUMax = new LongAccumulator(MAX, 0);
+  private final LongAdder buildNanos = new LongAdder();
+
+  private final LongAdder tables = new LongAdder();
+  private final LongAdder fullTables = new LongAdder();
+  private final LongAdder tableNanos = new LongAdder();
+
+  private final LongAdder runs = new LongAdder();
+  private final LongAdder steps = new LongAdder();
+  private final LongAdder runNanos = new LongAdder();
+  private final LongAdder inits = new LongAdder();
+  private final LongAdder initsAtRest = new LongAdder();
+
+  public void networkBuilt(int tfGenes, int pGenes, int inputs, int umax, long nanos) {
+    networks.increment();
+    genes.add(tfGenes + pGenes);
+    maxGenes.accumulate(tfGenes + pGenes);
+    maxUMax.accumulate(umax);
+    buildNanos.add(nanos);
+  }
+
+  public void tablesBuilt(int genes, int proteins, int umax, boolean full, long nanos) {
+    tables.increment();
+    if (full)
+      fullTables.increment();
+    tableNanos.add(nanos);
+  }
+
+  public void ran(int genes, int proteins, int steps, boolean initialising, boolean atRest, long nanos) {
+    runs.increment();
+    this.steps.add(steps);
+    runNanos.add(nanos);
+    if (initialising) {
+      inits.increment();
+      if (atRest)
+        initsAtRest.increment();
+    }
+  }
+
+  /**
+   * @return number of networks built
+   */
+  public long getNetworks() {
+    return networks.sum();
+  }
+
+  /**
+   * @return mean number of genes per network built
+   */
+  public double getMeanGenes() {
+    long n = networks.sum();
+    return n == 0 ? 0 : (double)genes.sum() / n;
+  }
+
+  /**
+   * @return most genes in a network built
+   */
+  public long getMaxGenes() {
+    return maxGenes.get();
+  }
+
+  /**
+   * @return greatest umax of a network built
+   */
+  public long getMaxUMax() {
+    return maxUMax.get();
+  }
+
+  /**
+   * @return total time spent building networks, in nanoseconds
+   */
+  public long getBuildNanos() {
+    return buildNanos.sum();
+  }
+
+  /**
+   * @return number of times tables were built, in full or in part
+   */
+  public long getTables() {
+    return tables.sum();
+  }
+
+  /**
+   * @return number of times tables were built in full
+   */
+  public long getFullTables() {
+    return fullTables.sum();
+  }
+
+  /**
+   * @return total time spent building tables, in nanoseconds
+   */
+  public long getTableNanos() {
+    return tableNanos.sum();
+  }
+
+  /**
+   * @return number of runs
+   */
+  public long getRuns() {
+    return runs.sum();
+  }
+
+  /**
+   * @return total time steps executed
+   */
+  public long getSteps() {
+    return steps.sum();
+  }
+
+  /**
+   * @return total time spent running, in nanoseconds
+   */
+  public long getRunNanos() {
+    return runNanos.sum();
+  }
+
+  /**
+   * @return mean time per time step, in nanoseconds
+   */
+  public double getNanosPerStep() {
+    long s = steps.sum();
+    return s == 0 ? 0 : (double)runNanos.sum() / s;
+  }
+
+  /**
+   * @return number of initialising runs
+   */
+  public long getInits() {
+    return inits.sum();
+  }
+
+  /**
+   * @return number of initialising runs that came to rest
+   */
+  public long getInitsAtRest() {
+    return initsAtRest.sum();
+  }
+
+  /**
+   * @return number of initialising runs that ran for their whole
+   * period without coming to rest
+   */
+  public long getInitsExhausted() {
+    return inits.sum() - initsAtRest.sum();
+  }
+
+  /**
+   * Reset every total to zero. Not atomic with respect to concurrent updates.
+   */
+  public void reset() {
+    networks.reset();
+    genes.reset();
+    maxGenes.reset();
+    maxUMax.reset();
+    buildNanos.reset();
+    tables.reset();
+    fullTables.reset();
+    tableNanos.reset();
+    runs.reset();
+    steps.reset();
+    runNanos.reset();
+    inits.reset();
+    initsAtRest.reset();
+  }
+
+  public String toString() {
+    return String.format("networks=%d meanGenes=%.1f maxGenes=%d maxUMax=%d buildMs=%.1f"
+                         +" tables=%d full=%d tableMs=%.1f"
+                         +" runs=%d steps=%d runMs=%.1f nsPerStep=%.1f inits=%d atRest=%d exhausted=%d",
+                         getNetworks(), getMeanGenes(), getMaxGenes(), getMaxUMax(), getBuildNanos() / 1e6,
+                         getTables(), getFullTables(), getTableNanos() / 1e6,
+                         getRuns(), getSteps(), getRunNanos() / 1e6, getNanosPerStep(),
+                         getInits(), getInitsAtRest(), getInitsExhausted());
+  }
+}
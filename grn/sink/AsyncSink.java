@@ -0,0 +1,274 @@
+package grn.sink;
+
+import java.io.Closeable;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Hands a trajectory to another sink on a background thread, so that
+ * a slow target such as a file writer overlaps with the simulation
+ * instead of stalling it.
+ *
+ * Rows are copied into fixed size chunks of time steps. A full chunk
+ * is queued for the writer thread, which replays it to the target,
+ * while the simulation fills the next. Chunks come from a fixed pool,
+ * two by default, so memory is bounded by the pool whatever the
+ * length of the run: if the target cannot keep up, the simulation
+ * waits for the writer to hand a chunk back.
+ *
+ * The target sees exactly the calls it would have seen directly, in
+ * order, on the writer thread. A failure in the target is rethrown to
+ * the simulation on its next call. close() must be called to drain
+ * the queue and stop the thread; it does not close the target.
+ */
+public class AsyncSink implements TrajectorySink, Closeable {
+
+  /** Kinds of chunk */
+  private static final int ROWS = 0, BEGIN = 1, END = 2, STOP = 3;
+
+  /** The sink rows are replayed to */
+  private final TrajectorySink target;
+
+  /** Time steps per chunk */
+  private final int chunkRows;
+
+  /** Chunks ready for the writer */
+  private final BlockingQueue<Chunk> queue;
+
+  /** Chunks ready for the simulation */
+  private final BlockingQueue<Chunk> free;
+
+  /** The writer thread */
+  private final Thread writer;
+
+  /** The chunk being filled, null if none */
+  private Chunk current;
+
+  /** Proteins per row of the current run */
+  private int n;
+
+  /** Chunks queued but not yet replayed */
+  private int pending;
+
+  /** Number of times the simulation waited for a free chunk */
+  private long waits;
+
+  /** The first failure of the target, if any */
+  private volatile Throwable failure;
+
+  /**
+   * Creates a double buffered sink.
+   *
+   * @param target the sink to hand the trajectory to
+   * @param chunkRows number of time steps per chunk
+   */
+  public AsyncSink(TrajectorySink target, int chunkRows) {
+    this(target, chunkRows, 2);
+  }
+
+  /**
+   * @param target the sink to hand the trajectory to
+   * @param chunkRows number of time steps per chunk
+   * @param buffers number of chunks, at least 2 for the simulation and writer to overlap
+   */
+  public AsyncSink(TrajectorySink target, int chunkRows, int buffers) {
+    if (chunkRows < 1 || buffers < 1)
+      throw new IllegalArgumentException("Need at least one chunk of one row: "+buffers+" x "+chunkRows);
+    this.target = target;
+    this.chunkRows = chunkRows;
+    queue = new ArrayBlockingQueue<Chunk>(buffers + 1);
+    free = new ArrayBlockingQueue<Chunk>(buffers);
+    for (int i = 0; i < buffers; i++)
+      free.add(new Chunk());
+
+    writer = new Thread(new Runnable() {
+      public void run() {
+        drain();
+      }
+    }, "AsyncSink writer");
+    writer.setDaemon(true);
+    writer.start();
+  }
+
+  public void begin(int nTf, int nInputs, int nP, int timeSteps) {
+    checkFailure();
+    Chunk c = take(BEGIN);
+    c.shape[0] = nTf;
+    c.shape[1] = nInputs;
+    c.shape[2] = nP;
+    c.shape[3] = timeSteps;
+    n = nTf + nInputs + nP;
+    put(c);
+  }
+
+  public void record(int t, double[] row) {
+    if (current == null) {
+      checkFailure();
+      current = take(ROWS);
+      if (current.data.length < chunkRows * n)
+        current.data = new double[chunkRows * n];
+      if (current.steps.length < chunkRows)
+        current.steps = new int[chunkRows];
+    }
+    System.arraycopy(row, 0, current.data, current.rows * n, n);
+    current.steps[current.rows++] = t;
+    if (current.rows == chunkRows) {
+      put(current);
+      current = null;
+    }
+  }
+
+  public void end(int lastStep) {
+    checkFailure();
+    flushRows();
+    Chunk c = take(END);
+    c.shape[0] = lastStep;
+    put(c);
+  }
+
+  /**
+   * Wait until the target has been handed everything recorded so far.
+   */
+  public void flush() {
+    flushRows();
+    synchronized (this) {
+      while (pending > 0) {
+        try {
+          wait();
+        }
+        catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          throw new IllegalStateException("Interrupted while flushing", e);
+        }
+      }
+    }
+    checkFailure();
+  }
+
+  /**
+   * Drain the queue and stop the writer thread. The target is not closed.
+   */
+  public void close() {
+    flushRows();
+    put(take(STOP));
+    try {
+      writer.join();
+    }
+    catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException("Interrupted while closing", e);
+    }
+    checkFailure();
+  }
+
+  /**
+   * @return number of times the simulation waited for the writer
+   */
+  public synchronized long getWaits() {
+    return waits;
+  }
+
+  /**
+   * Queue the partly filled chunk, if any.
+   */
+  private void flushRows() {
+    if (current != null) {
+      put(current);
+      current = null;
+    }
+  }
+
+  /**
+   * Take a free chunk, waiting for the writer if there is none.
+   */
+  private Chunk take(int kind) {
+    Chunk c = free.poll();
+    if (c == null) {
+      synchronized (this) {
+        waits++;
+      }
+      try {
+        c = free.take();
+      }
+      catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new IllegalStateException("Interrupted while waiting for the writer", e);
+      }
+    }
+    c.kind = kind;
+    c.rows = 0;
+    return c;
+  }
+
+  private void put(Chunk c) {
+    synchronized (this) {
+      pending++;
+    }
+    queue.add(c);
+  }
+
+  /**
+   * The writer thread: replay chunks to the target until stopped.
+   */
+  private void drain() {
+    double[] row = new double[0];
+    while (true) {
+      Chunk c;
+      try {
+        c = queue.take();
+      }
+      catch (InterruptedException e) {
+        return;
+      }
+
+      if (failure == null) {
+        try {
+          switch (c.kind) {
+          case BEGIN:
+            row = new double[c.shape[0] + c.shape[1] + c.shape[2]];
+            target.begin(c.shape[0], c.shape[1], c.shape[2], c.shape[3]);
+            break;
+          case ROWS:
+            for (int r = 0; r < c.rows; r++) {
+              System.arraycopy(c.data, r * row.length, row, 0, row.length);
+              target.record(c.steps[r], row);
+            }
+            break;
+          case END:
+            target.end(c.shape[0]);
+            break;
+          }
+        }
+        catch (Throwable e) {
+          failure = e;
+        }
+      }
+
+      int kind = c.kind;
+      free.add(c);
+      synchronized (this) {
+        pending--;
+        notifyAll();
+      }
+      if (kind == STOP)
+        return;
+    }
+  }
+
+  private void checkFailure() {
+    Throwable e = failure;
+    if (e != null)
+      throw new IllegalStateException("Trajectory target failed", e);
+  }
+
+  /**
+   * A run of rows, or a begin, end or stop call.
+   */
+  private static class Chunk {
+    int kind;
+    final int[] shape = new int[4];
+    double[] data = new double[0];
+    int[] steps = new int[0];
+    int rows;
+  }
+}
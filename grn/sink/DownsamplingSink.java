@@ -0,0 +1,55 @@
+package grn.sink;
+
+/**
+ * Forwards every k-th row, plus the final row, to another sink.
+ *
+ * The target sees a compacted run: sample i is time step i*k, and if
+ * the run does not end on a multiple of k its final row follows as one
+ * extra sample. A MatrixSink target therefore holds about timeSteps/k
+ * rows.
+ */
+public class DownsamplingSink implements TrajectorySink {
+
+  /** The sampling interval */
+  private final int every;
+
+  /** Where sampled rows go */
+  private final TrajectorySink target;
+
+  /** Copy of the latest row, forwarded at the end if it was not sampled */
+  private double[] last = new double[0];
+
+  /**
+   * @param every forward rows whose time step is a multiple of this
+   * @param target the sink that receives the sampled rows
+   */
+  public DownsamplingSink(int every, TrajectorySink target) {
+    if (every < 1)
+      throw new IllegalArgumentException("Sampling interval must be positive: "+every);
+    this.every = every;
+    this.target = target;
+  }
+
+  public void begin(int nTf, int nInputs, int nP, int timeSteps) {
+    if (last.length != nTf + nInputs + nP)
+      last = new double[nTf + nInputs + nP];
+    target.begin(nTf, nInputs, nP, (timeSteps + every - 1) / every);
+  }
+
+  public void record(int t, double[] row) {
+    if (t % every == 0)
+      target.record(t / every, row);
+    else
+      System.arraycopy(row, 0, last, 0, last.length);
+  }
+
+  public void end(int lastStep) {
+    if (lastStep % every == 0) {
+      target.end(lastStep / every);
+    }
+    else {
+      target.record(lastStep / every + 1, last);
+      target.end(lastStep / every + 1);
+    }
+  }
+}
@@ -0,0 +1,44 @@
+package grn.sink;
+
+/**
+ * Keeps only the final state of a run. Memory is one row regardless
+ * of the run length, and the row is reused between runs of the same
+ * width.
+ */
+public class FinalStateSink implements TrajectorySink {
+
+  /** The latest row recorded */
+  private double[] state = new double[0];
+
+  /** The time step of the latest row */
+  private int step = -1;
+
+  public void begin(int nTf, int nInputs, int nP, int timeSteps) {
+    if (state.length != nTf + nInputs + nP)
+      state = new double[nTf + nInputs + nP];
+    step = -1;
+  }
+
+  public void record(int t, double[] row) {
+    System.arraycopy(row, 0, state, 0, state.length);
+    step = t;
+  }
+
+  public void end(int lastStep) {
+    step = lastStep;
+  }
+
+  /**
+   * @return the final state, valid until the next run into this sink
+   */
+  public double[] getState() {
+    return state;
+  }
+
+  /**
+   * @return the time step of the final state, or -1 before anything was recorded
+   */
+  public int getStep() {
+    return step;
+  }
+}
@@ -0,0 +1,47 @@
+package grn.sink;
+
+/**
+ * Keeps every row in a (timeSteps+1) x proteins matrix of floats, half
+ * the memory of MatrixSink. Rows after the last recorded step are left
+ * as zeros.
+ *
+ * Rows are rounded to single precision, so this loses nothing of a run
+ * on the FLOAT engine apart from the input concentrations' low bits.
+ */
+public class FloatMatrixSink implements TrajectorySink {
+
+  /** The recorded trajectory */
+  private float[][] results;
+
+  /** The time step of the final row */
+  private int lastStep = -1;
+
+  public void begin(int nTf, int nInputs, int nP, int timeSteps) {
+    results = new float[timeSteps + 1][nTf + nInputs + nP];
+    lastStep = -1;
+  }
+
+  public void record(int t, double[] row) {
+    float[] result = results[t];
+    for (int i = 0; i < row.length; i++)
+      result[i] = (float)row[i];
+  }
+
+  public void end(int lastStep) {
+    this.lastStep = lastStep;
+  }
+
+  /**
+   * @return the recorded trajectory: time steps x proteins
+   */
+  public float[][] getResults() {
+    return results;
+  }
+
+  /**
+   * @return the time step of the final row, or -1 before a run has ended
+   */
+  public int getLastStep() {
+    return lastStep;
+  }
+}
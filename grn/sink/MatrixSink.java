@@ -0,0 +1,42 @@
+package grn.sink;
+
+/**
+ * Keeps every row in a (timeSteps+1) x proteins matrix, which is what
+ * Grn.run(int, boolean) returns. Rows after the last recorded step are
+ * left as zeros.
+ */
+public class MatrixSink implements TrajectorySink {
+
+  /** The recorded trajectory */
+  private double[][] results;
+
+  /** The time step of the final row */
+  private int lastStep = -1;
+
+  public void begin(int nTf, int nInputs, int nP, int timeSteps) {
+    results = new double[timeSteps + 1][nTf + nInputs + nP];
+    lastStep = -1;
+  }
+
+  public void record(int t, double[] row) {
+    System.arraycopy(row, 0, results[t], 0, row.length);
+  }
+
+  public void end(int lastStep) {
+    this.lastStep = lastStep;
+  }
+
+  /**
+   * @return the recorded trajectory: time steps x proteins
+   */
+  public double[][] getResults() {
+    return results;
+  }
+
+  /**
+   * @return the time step of the final row, or -1 before a run has ended
+   */
+  public int getLastStep() {
+    return lastStep;
+  }
+}
@@ -0,0 +1,71 @@
+package grn.sink;
+
+/**
+ * Forwards a subset of each row's proteins to another sink, e.g. only
+ * the P proteins. The target sees rows made up of the selected columns
+ * only, with the TF, input and P counts of the selection.
+ */
+public class ProjectionSink implements TrajectorySink {
+
+  /** The selected columns, ascending */
+  private final int[] indices;
+
+  /** Where projected rows go */
+  private final TrajectorySink target;
+
+  /** The projected row */
+  private final double[] projected;
+
+  /**
+   * @param indices the columns to keep, strictly ascending
+   * @param target the sink that receives the projected rows
+   */
+  public ProjectionSink(int[] indices, TrajectorySink target) {
+    for (int i = 1; i < indices.length; i++)
+      if (indices[i] <= indices[i-1])
+        throw new IllegalArgumentException("Protein indices must be strictly ascending");
+    this.indices = indices.clone();
+    this.target = target;
+    this.projected = new double[indices.length];
+  }
+
+  /**
+   * A projection onto the P proteins only.
+   *
+   * @param nTfProteins number of TF proteins including inputs
+   * @param nP number of P proteins
+   * @param target the sink that receives the projected rows
+   * @return a new projection
+   */
+  public static ProjectionSink pOutputs(int nTfProteins, int nP, TrajectorySink target) {
+    int[] indices = new int[nP];
+    for (int i = 0; i < nP; i++)
+      indices[i] = nTfProteins + i;
+    return new ProjectionSink(indices, target);
+  }
+
+  public void begin(int nTf, int nInputs, int nP, int timeSteps) {
+    int tf = 0, in = 0, p = 0;
+    for (int i : indices) {
+      if (i >= nTf + nInputs + nP)
+        throw new IndexOutOfBoundsException("Protein "+i+" out of range for "+(nTf + nInputs + nP)+" proteins");
+      else if (i >= nTf + nInputs)
+        p++;
+      else if (i >= nTf)
+        in++;
+      else
+        tf++;
+    }
+    target.begin(tf, in, p, timeSteps);
+  }
+
+  public void record(int t, double[] row) {
+    for (int i = 0; i < indices.length; i++)
+      projected[i] = row[indices[i]];
+    target.record(t, projected);
+  }
+
+  public void end(int lastStep) {
+    target.end(lastStep);
+  }
+}
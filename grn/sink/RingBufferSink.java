@@ -0,0 +1,80 @@
+package grn.sink;
+
+/**
+ * Keeps the last N rows of a run in a fixed-size ring buffer.
+ */
+public class RingBufferSink implements TrajectorySink {
+
+  /** Number of rows kept */
+  private final int capacity;
+
+  /** The ring, capacity x proteins */
+  private double[][] rows = new double[0][];
+
+  /** Number of rows recorded in the current run */
+  private int count;
+
+  /** The time step of the latest row */
+  private int lastStep = -1;
+
+  /**
+   * @param capacity number of most recent rows to keep
+   */
+  public RingBufferSink(int capacity) {
+    if (capacity < 1)
+      throw new IllegalArgumentException("Capacity must be positive: "+capacity);
+    this.capacity = capacity;
+  }
+
+  public void begin(int nTf, int nInputs, int nP, int timeSteps) {
+    int n = nTf + nInputs + nP;
+    if (rows.length != capacity || rows[0].length != n)
+      rows = new double[capacity][n];
+    count = 0;
+    lastStep = -1;
+  }
+
+  public void record(int t, double[] row) {
+    System.arraycopy(row, 0, rows[t % capacity], 0, row.length);
+    count++;
+    lastStep = t;
+  }
+
+  public void end(int lastStep) {
+    this.lastStep = lastStep;
+  }
+
+  /**
+   * @return the number of rows currently held
+   */
+  public int size() {
+    return Math.min(count, capacity);
+  }
+
+  /**
+   * @return the time step of the oldest row held
+   */
+  public int firstStep() {
+    return lastStep - size() + 1;
+  }
+
+  /**
+   * @param t a time step between firstStep() and the last step recorded
+   * @return the row recorded at t, valid until it is overwritten
+   */
+  public double[] get(int t) {
+    if (t < firstStep() || t > lastStep)
+      throw new IndexOutOfBoundsException("Step "+t+" not held, have "+firstStep()+" to "+lastStep);
+    return rows[t % capacity];
+  }
+
+  /**
+   * @return a copy of the rows held, oldest first
+   */
+  public double[][] getSteps() {
+    double[][] steps = new double[size()][];
+    for (int i = 0; i < steps.length; i++)
+      steps[i] = get(firstStep() + i).clone();
+    return steps;
+  }
+}
@@ -0,0 +1,38 @@
+package grn.sink;
+
+/**
+ * Receives the state of a network at each time step of a run, in
+ * place of the full results matrix.
+ *
+ * Rows are laid out as a row of Grn.results: TF proteins, input TF
+ * proteins, P proteins. The row passed to record() is the network's
+ * live concentration vector; a sink that keeps a row must copy it.
+ */
+public interface TrajectorySink {
+
+  /**
+   * Called once before the first row of a run.
+   *
+   * @param nTf number of TF proteins, excluding inputs
+   * @param nInputs number of input TF proteins
+   * @param nP number of P proteins
+   * @param timeSteps the requested length of the run; at most
+   * timeSteps+1 rows will be recorded
+   */
+  void begin(int nTf, int nInputs, int nP, int timeSteps);
+
+  /**
+   * Record the state at time step t. Called for t = 0, 1, ... in order.
+   *
+   * @param t the time step
+   * @param row the concentrations; must not be modified or retained
+   */
+  void record(int t, double[] row);
+
+  /**
+   * Called once after the final state has been recorded.
+   *
+   * @param lastStep the time step of the final row
+   */
+  void end(int lastStep);
+}